@@ -0,0 +1,128 @@
+import java.nio.ByteBuffer;
+
+/**
+ * A bitset index over the rows of a data model, for data models with few
+ * feature values and labels. Each (feature, feature value) pair and each label
+ * gets a bitset with one bit per row, and a node's data is represented by a
+ * membership bitset. Histogram counts then become population counts of ANDed
+ * words, which counts 64 rows at a time, for nodes whose rows are dense
+ * enough.
+ * @author Nathan P
+ *
+ */
+class BitsetIndex {
+
+	private static final String TAG = BitsetIndex.class.getSimpleName();
+
+	// The largest number of feature values and labels for which the index is
+	// worth building. Counting costs a pass over the words per (feature,
+	// feature value, label) triple, so this only beats scanning the rows when
+	// the triples are few
+	public static final int MAX_FEATURE_VALUES = 4;
+	public static final int MAX_LABELS = 2;
+
+	// Bitsets indexed by [feature][feature value][word]
+	private long[][][] mValueBits;
+	// Bitsets indexed by [label][word]
+	private long[][] mLabelBits;
+	private int mNumWords;
+
+	/**
+	 * Builds the bitset index for every row of the data model
+	 * @param dataModel The data model to index
+	 */
+	public BitsetIndex(DataModel dataModel) {
+		int dataSize = dataModel.getDataSize();
+		int numFeatures = dataModel.getNumFeatures();
+		int numFeatureVals = dataModel.getNumFeatureValues();
+		mNumWords = (dataSize + 63) >>> 6;
+
+		mValueBits = new long[numFeatures][numFeatureVals][mNumWords];
+		for(int f = 0; f < numFeatures; f++) {
+			ByteBuffer column = dataModel.getFeatureColumn(f);
+			long[][] featureBits = mValueBits[f];
+			for(int row = 0; row < dataSize; row++)
+				featureBits[column.get(row) & 0xFF][row >>> 6] |= 1L << row;
+		}
+
+		mLabelBits = new long[dataModel.getLabels().length][mNumWords];
+		ByteBuffer labels = dataModel.getLabelColumn();
+		for(int row = 0; row < dataSize; row++)
+			mLabelBits[labels.get(row) & 0xFF][row >>> 6] |= 1L << row;
+	}
+
+	/**
+	 * Checks whether a data model is small enough in feature values and
+	 * labels for a bitset index to pay off. Population counts can't weigh
+	 * rows, so weighted data models aren't suitable.
+	 * @param dataModel The data model to check
+	 * @return True if the data model should be trained with a bitset index
+	 */
+	public static boolean isSuitable(DataModel dataModel) {
+		return !dataModel.isWeighted()
+				&& dataModel.getNumFeatureValues() <= MAX_FEATURE_VALUES
+				&& dataModel.getLabels().length <= MAX_LABELS;
+	}
+
+	/**
+	 * Fills the histogram with the feature value and label counts of every
+	 * feature for a range of rows, if they're dense enough for population 
+	 * counts to pay off. Counting costs a pass over the words spanned by the
+	 * rows per (feature, feature value, label) triple, where scanning the 
+	 * rows costs a pass over the rows per feature, so sparse ranges, like 
+	 * those of deep nodes, are left to be scanned.
+	 * @param rows Rows of the data model
+	 * @param start First index of the range
+	 * @param end One past the last index of the range
+	 * @param histogram An empty histogram to fill
+	 * @return True if the histogram was filled, false if the rows are too 
+	 *         sparse, in which case the histogram is left empty
+	 */
+	public boolean fillHistogram(int[] rows, int start, int end, 
+			Histogram histogram) 
+	{
+		if(start == end)
+			return false;
+		int firstRow = Integer.MAX_VALUE;
+		int lastRow = 0;
+		for(int i = start; i < end; i++) {
+			firstRow = Math.min(firstRow, rows[i]);
+			lastRow = Math.max(lastRow, rows[i]);
+		}
+		int first = firstRow >>> 6;
+		int last = (lastRow >>> 6) + 1;
+		int numValues = mValueBits[0].length;
+		if((long) (last - first) * numValues * mLabelBits.length 
+				> end - start)
+			return false;
+
+		// Build the membership bitset over the words the rows span
+		long[] members = new long[last - first];
+		for(int i = start; i < end; i++)
+			members[(rows[i] >>> 6) - first] |= 1L << rows[i];
+
+		int[][][] counts = histogram.getCounts();
+		long[] labelMembers = new long[members.length];
+		for(int l = 0; l < mLabelBits.length; l++) {
+			// Restrict to members with this label once, rather than once
+			// per feature value
+			long[] labelBits = mLabelBits[l];
+			for(int w = first; w < last; w++)
+				labelMembers[w - first] = members[w - first] & labelBits[w];
+
+			for(int f = 0; f < mValueBits.length; f++) {
+				long[][] featureBits = mValueBits[f];
+				for(int v = 0; v < featureBits.length; v++) {
+					long[] valueBits = featureBits[v];
+					int count = 0;
+					for(int w = first; w < last; w++) {
+						count += Long.bitCount(
+								labelMembers[w - first] & valueBits[w]);
+					}
+					counts[f][v][l] = count;
+				}
+			}
+		}
+		return true;
+	}
+}
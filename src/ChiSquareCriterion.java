@@ -0,0 +1,55 @@
+/**
+ * Scores splits by Pearson's chi-square statistic for the association 
+ * between the feature's values and the labels. It's zero when every child
+ * has the node's label distribution, and grows as the children's label 
+ * distributions diverge from it. Features can take different numbers of 
+ * values at a node, so their statistics have different degrees of freedom
+ * and don't compare directly. The statistic is instead normalized as 
+ * Cramer's V squared, dividing it by the number of data and by one less 
+ * than the smaller of the number of values taken and the number of labels 
+ * present, which puts every feature's score between zero and one.
+ * @author Nathan P
+ *
+ */
+class ChiSquareCriterion implements SplitCriterion {
+
+	private static final String TAG = ChiSquareCriterion.class.getSimpleName();
+
+	@Override
+	public double score(int[] labelCounts, int[][] featureCounts) {
+		int total = 0;
+		int numLabels = 0;
+		for(int count : labelCounts) {
+			total += count;
+			if(count > 0)
+				numLabels++;
+		}
+		if(total == 0)
+			return 0;
+
+		double chiSquare = 0;
+		int numValues = 0;
+		for(int[] valueCounts : featureCounts) {
+			int valCount = 0;
+			for(int count : valueCounts)
+				valCount += count;
+			if(valCount == 0)
+				continue;
+			numValues++;
+			for(int l = 0; l < labelCounts.length; l++) {
+				if(labelCounts[l] == 0)
+					continue;
+				// The count expected if the feature said nothing of the label
+				double expected = (double) valCount * labelCounts[l] / total;
+				double diff = valueCounts[l] - expected;
+				chiSquare += diff * diff / expected;
+			}
+		}
+
+		// With a single value or label there's no association to measure
+		int freedom = Math.min(numValues, numLabels) - 1;
+		if(freedom == 0)
+			return 0;
+		return chiSquare / ((double) total * freedom);
+	}
+}
@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The location of a data model's columns within a data model file, for
+ * reading them in blocks of rows through buffers of bounded size instead of
+ * holding them in memory. Readers open their own channel to the file.
+ * @author Nathan P
+ *
+ */
+class ColumnFile {
+
+	private static final String TAG = ColumnFile.class.getSimpleName();
+
+	private String mFilePath;
+	private int mDataSize;
+	// Offsets of the columns in the file
+	private long mLabelOffset;
+	private long[] mFeatureOffsets;
+
+	/**
+	 * Builds the column locations of a data model file
+	 * @param filePath Path to file
+	 * @param dataSize The number of rows
+	 * @param labelOffset Offset of the label column
+	 * @param featureOffsets Offset of each feature column
+	 */
+	public ColumnFile(String filePath, int dataSize, long labelOffset,
+			long[] featureOffsets)
+	{
+		mFilePath = filePath;
+		mDataSize = dataSize;
+		mLabelOffset = labelOffset;
+		mFeatureOffsets = featureOffsets;
+	}
+
+	/**
+	 * Returns the path of the data model file
+	 * @return
+	 */
+	public String getFilePath() {
+		return mFilePath;
+	}
+
+	/**
+	 * Opens a reader over the columns, which reads up to the specified
+	 * number of rows at a time
+	 * @param blockSize The most rows to read at once
+	 * @return
+	 * @throws IOException If the file can't be opened
+	 */
+	public Reader openReader(int blockSize) throws IOException {
+		return new Reader(blockSize);
+	}
+
+	/**
+	 * Returns the number of bytes a reader holds per row of its block
+	 * @return
+	 */
+	public int getBytesPerRow() {
+		return mFeatureOffsets.length + 1;
+	}
+
+	/**
+	 * Reads blocks of consecutive rows from the label and feature columns 
+	 * into buffers which are reused from block to block
+	 * @author Nathan P
+	 *
+	 */
+	public class Reader implements AutoCloseable {
+
+		private RandomAccessFile mFile;
+		private FileChannel mChannel;
+		private int mBlockSize;
+		private ByteBuffer mLabels;
+		private ByteBuffer[] mFeatures;
+
+		private Reader(int blockSize) throws IOException {
+			mFile = new RandomAccessFile(mFilePath, "r");
+			mChannel = mFile.getChannel();
+			mBlockSize = blockSize;
+			mLabels = ByteBuffer.allocate(blockSize);
+			mFeatures = new ByteBuffer[mFeatureOffsets.length];
+			for(int i = 0; i < mFeatures.length; i++)
+				mFeatures[i] = ByteBuffer.allocate(blockSize);
+		}
+
+		/**
+		 * Reads the block of rows starting at the specified row. Its codes
+		 * are then available through the getters, indexed from the block's
+		 * first row
+		 * @param firstRow The block's first row
+		 * @return The number of rows read, which is the block size unless
+		 *         the data ends first
+		 * @throws IOException If the file can't be read
+		 */
+		public int readBlock(int firstRow) throws IOException {
+			int numRows = Math.min(mBlockSize, mDataSize - firstRow);
+			readFully(mLabels, mLabelOffset + firstRow, numRows);
+			for(int i = 0; i < mFeatures.length; i++)
+				readFully(mFeatures[i], mFeatureOffsets[i] + firstRow, numRows);
+			return numRows;
+		}
+
+		/**
+		 * Returns the label codes of the block
+		 * @return
+		 */
+		public byte[] getLabels() {
+			return mLabels.array();
+		}
+
+		/**
+		 * Returns the specified feature's value codes for the block
+		 * @param feature The feature's index
+		 * @return
+		 */
+		public byte[] getFeatures(int feature) {
+			return mFeatures[feature].array();
+		}
+
+		/**
+		 * Fills the start of a buffer from the file
+		 * @param buffer Buffer to fill
+		 * @param pos Offset in the file to read from
+		 * @param length Number of bytes to read
+		 * @throws IOException If the file is too short or can't be read
+		 */
+		private void readFully(ByteBuffer buffer, long pos, int length)
+				throws IOException
+		{
+			buffer.clear();
+			buffer.limit(length);
+			while(buffer.hasRemaining()) {
+				int read = mChannel.read(buffer, pos + buffer.position());
+				if(read < 0)
+					throw new IOException(mFilePath + " is truncated");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			mFile.close();
+		}
+	}
+}
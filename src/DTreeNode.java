@@ -10,84 +10,91 @@ class DTreeNode {
 
 	private static final String TAG = DTreeNode.class.getSimpleName();
 	
+	// Stands in for a label or feature value code that doesn't exist
+	public static final int NONE = -1;
+	
 	// If this node contains uniform data (is a leaf), this will be the 
-	// uniform label. Otherwise, it's null.
-	private Character mUniformVal; 
+	// uniform label's code. Otherwise, it's NONE.
+	private int mUniformVal; 
 							 
-	// The feature type that this node splits on, or null if this is the root
-	private Character mFeatureValue;	
+	// The code of the feature value that this node represents, or NONE if 
+	// this is the root
+	private int mFeatureValue;	
 	// The index of the feature on which this node splits
 	private int mSplitOnFeature; 
 	private ArrayList<DTreeNode> mChildren;
+	// The children indexed by the code of the feature value they represent.
+	// Values which no training data at this node took have no child
+	private DTreeNode[] mChildByValue;
 	private DTreeNode mParent; 
-	private DataModel.Datum[] mData;
-	private double mEntropy;
+	// The number of training data with each label at this node
+	private int[] mLabelCounts;
 	
-	// The majority label at this leaf, or null if tied
-	private Character mMajorityLabel; 
+	// The majority label's code at this leaf, or NONE if tied
+	private int mMajorityLabel; 
 	
-	// A list of all possible labels
-	private Character[] mLabels;
+	// The data model, for decoding labels and feature values
+	private DataModel mDataModel;
 
 	/**
 	 * Builds a root node
-	 * @param data The data that this node contains
-	 * @param labels A list of possible labels for the data set
-	 * @param entropy This node's entropy
+	 * @param dataModel The data model being classified
+	 * @param labelCounts The number of training data with each label
 	 */
-	public DTreeNode(DataModel.Datum[] data, 
-					Character[] labels,
-					double entropy) 
+	public DTreeNode(DataModel dataModel,
+					int[] labelCounts) 
 	{
-		this(data, null, null, labels, entropy);
+		this(dataModel, labelCounts, NONE, null);
 	}
 
 	/**
 	 * Builds an intermediary or leaf node
-	 * @param data The data that this node contains
-	 * @param featureVal The feature value that this node represents
+	 * @param dataModel The data model being classified
+	 * @param labelCounts The number of training data with each label
+	 * @param featureVal The code of the feature value that this node 
+	 *        represents
 	 * @param parent This node's parent
-	 * @param labels A list of possible labels for the data set
-	 * @param entropy This node's entropy
-	 */
-	public DTreeNode(DataModel.Datum[] data, 
-					Character featureVal, 
-					DTreeNode parent, 
-					Character[] labels,
-					double entropy) 
+	 */
+	public DTreeNode(DataModel dataModel,
+					int[] labelCounts,
+					int featureVal, 
+					DTreeNode parent) 
 	{
-		mEntropy = entropy;
 		mChildren = new ArrayList<DTreeNode>();
-		mData = data;
+		mLabelCounts = labelCounts;
 		mFeatureValue = featureVal;
 		mParent = parent;		
-		mLabels = labels;
+		mDataModel = dataModel;
 		
 		mUniformVal = checkUniformity();
 		mMajorityLabel = setMajorityLabel();
 	}
 
 	/**
-	 * Gets the data that this node contains
+	 * Gets the number of training data with each label at this node
 	 * @return
 	 */
-	public DataModel.Datum[] getData() {
-		return mData;
+	public int[] getLabelCounts() {
+		return mLabelCounts;
 	}
 
 	/**
-	 * Gets this node's entropy
+	 * Gets the number of training data that this node contains
 	 * @return
 	 */
-	public double getEntropy() {
-		return mEntropy;
+	public int getSize() {
+		int size = 0;
+		for(int count : mLabelCounts)
+			size += count;
+		return size;
 	}
 
 	/**
 	 * Set the uniform value of this node
-	 * @param uniformVal The uniform value of this node, or null if not uniform
+	 * @param uniformVal The uniform label code of this node, or NONE if not 
+	 *        uniform
 	 */
-	public void setUniform(Character uniformVal) {
+	public void setUniform(int uniformVal) {
 		mUniformVal = uniformVal;
 	}
 
@@ -105,29 +112,27 @@ class DTreeNode {
 	 */
 	public void addChild(DTreeNode child) {
 		mChildren.add(child);
+		if(mChildByValue == null)
+			mChildByValue = new DTreeNode[mDataModel.getNumFeatureValues()];
+		mChildByValue[child.mFeatureValue] = child;
 	}
 	
 	/**
 	 * Checks if this node is uniform. If so, it returns the uniform label,
-	 * otherwise returns null
-	 * @return Uniform label, or null if not uniform
-	 */
-	private Character checkUniformity() {
-		int label1Count = 0;
-		int label2Count = 0;
-		for(DataModel.Datum d : mData) {
-			if(d.getLabel() == mLabels[0]) label1Count++;
-			else label2Count++;
-			// If both labels exist in the node's data set, node is not uniform
-			if(label1Count > 0 && label2Count > 0) 
-				return null;
+	 * otherwise returns NONE
+	 * @return Uniform label code, or NONE if not uniform
+	 */
+	private int checkUniformity() {
+		int label = NONE;
+		for(int i = 0; i < mLabelCounts.length; i++) {
+			if(mLabelCounts[i] == 0)
+				continue;
+			// If two labels exist in the node's data set, node is not uniform
+			if(label != NONE)
+				return NONE;
+			label = i;
 		}
-		char label;
-		if(label1Count > 0) {
-			label = mLabels[0];
-		} else if(label2Count > 0) {
-			label = mLabels[1];
-		} else {
+		if(label == NONE) {
 			// This means we have an empty data set. This node will become a 
 			// leaf whose uniform value is the majority label of the 
 			// parent node (or random if no parent)
@@ -138,41 +143,62 @@ class DTreeNode {
 	}
 	
 	/**
-	 * Returns a random label
+	 * Returns a random one of the codes of the labels tied for the most data
+	 * at this node. With no data, every label is tied
 	 * @return
 	 */
-	private char randomLabel() {
+	private int randomLabel() {
+		int maxCount = -1;
+		int numTied = 0;
+		for(int count : mLabelCounts) {
+			if(count > maxCount) {
+				maxCount = count;
+				numTied = 1;
+			} else if(count == maxCount) {
+				numTied++;
+			}
+		}
+		
+		// Pick the chosen one of the tied labels
 		Random rand = new Random(System.currentTimeMillis());
-		int num = rand.nextInt(2);
-		if(num == 0) return mLabels[0];
-		else return mLabels[1];
+		int pick = rand.nextInt(numTied);
+		for(int i = 0; i < mLabelCounts.length; i++) {
+			if(mLabelCounts[i] == maxCount && pick-- == 0)
+				return i;
+		}
+		return NONE;
 	}
 
 	/**
 	 * Calculates and returns the majority label at this node, or null if the
 	 * node labels are tied
-	 * @return The majority label at this node, or null if tied
-	 */
-	private Character setMajorityLabel()	{
-		int label1Count = 0;
-		int label2Count = 0;
-		for(DataModel.Datum d : mData) {
-			if(d.getLabel() == mLabels[0]) label1Count++;
-			else label2Count++;
+	 * @return The majority label code at this node, or NONE if tied
+	 */
+	private int setMajorityLabel()	{
+		int majority = NONE;
+		int majorityCount = -1;
+		boolean tied = false;
+		for(int i = 0; i < mLabelCounts.length; i++) {
+			if(mLabelCounts[i] > majorityCount) {
+				majority = i;
+				majorityCount = mLabelCounts[i];
+				tied = false;
+			} else if(mLabelCounts[i] == majorityCount) {
+				tied = true;
+			}
 		}
-		if(label1Count > label2Count) return mLabels[0];
-		else if(label2Count > label1Count) return mLabels[1];
-		else return null;
+		return tied ? NONE : majority;
 	}
 		
 	/**
 	 * Gets the label with which the majority of this node's data affiliates.
 	 * In the case of a tie, we recurse up the tree until we get to a node
 	 * which has a majority. Finally, if we've recursed up the tree to the root 
-	 * and still haven't found a majority, the tie is broken randomly
-	 * @return Majority label, or random label in the case of a tie
+	 * and still haven't found a majority, the tie is broken randomly among
+	 * the root's tied labels
+	 * @return Majority label code, or random tied label in the case of a tie
 	 */
-	public char getMajorityLabel() {
+	public int getMajorityLabel() {
 		return getMajorityLabelHelper(this);
 	}
 	
@@ -180,15 +206,16 @@ class DTreeNode {
 	 * Recursive helper for finding the majority label at a node
 	 * @param root Root node of tree
 	 * @return The majority label at the closest ancestor with a majority, or a 
-	 *         random label if no ancestors have a majority
+	 *         random one of the root's tied labels if no ancestors have a 
+	 *         majority
 	 */
-	private char getMajorityLabelHelper(DTreeNode root) {
-		Character val = root.mMajorityLabel;
+	private int getMajorityLabelHelper(DTreeNode root) {
+		int val = root.mMajorityLabel;
 		// If this node ties, recurse up
-		if(val == null) {
-			// If no parent, just pick a random party
+		if(val == NONE) {
+			// If no parent, just pick a random one of the tied parties
 			if(root.mParent == null)
-				val = randomLabel();
+				val = root.randomLabel();
 			else
 				val = getMajorityLabelHelper(root.mParent);
 		}
@@ -203,23 +230,33 @@ class DTreeNode {
 		return mChildren;
 	}
 
+	/**
+	 * Gets the child representing the specified feature value
+	 * @param featureVal The feature value's code
+	 * @return The child, or null if none of this node's training data took
+	 *         the feature value
+	 */
+	public DTreeNode getChild(int featureVal) {
+		return (mChildByValue == null) ? null : mChildByValue[featureVal];
+	}
+
 	/**
 	 * Checks if this is a uniform (leaf) node
 	 * @return True if node is uniform (a leaf), false otherwise
 	 */
 	public boolean isUniform() {
-		if (mUniformVal == null)
+		if (mUniformVal == NONE)
 			return false;
 		else
 			return true;
 	}
 
 	/**
-	 * Returns the uniform value of this node, or null if this node is not
-	 * uniform
-	 * @return Uniform value of node, or null if node is not uniform
+	 * Returns the uniform label code of this node, or NONE if this node is 
+	 * not uniform
+	 * @return Uniform value of node, or NONE if node is not uniform
 	 */
-	public Character getUniformVal() {
+	public int getUniformVal() {
 		return mUniformVal;
 	}
 
@@ -232,21 +269,23 @@ class DTreeNode {
 	}
 
 	/**
-	 * Returns the feature value that this node represents
+	 * Returns the code of the feature value that this node represents
 	 * @return
 	 */
-	public Character getFeatureValue() {
+	public int getFeatureValue() {
 		return mFeatureValue;
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder str = new StringBuilder();
-		if(mUniformVal == null)
-			str.append((mFeatureValue == null) ? " " : mFeatureValue
+		Character featureVal = (mFeatureValue == NONE) ? 
+				null : mDataModel.getFeatureValue(mFeatureValue);
+		if(mUniformVal == NONE)
+			str.append((featureVal == null) ? " " : featureVal
 				+ " Feature " + mSplitOnFeature);
 		else 
-			str.append(mFeatureValue + " " + mUniformVal);
+			str.append(featureVal + " " + mDataModel.getLabel(mUniformVal));
 		return str.toString();
 	}
 }
\ No newline at end of file
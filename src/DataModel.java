@@ -1,10 +1,19 @@
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * A data model for the decision tree. This includes a list of data, the 
- * possible feature values for each feature and the label set.
+ * possible feature values for each feature and the label set. Feature values
+ * and labels are dictionary encoded: each distinct value is assigned a dense
+ * code, which is its index in the feature value or label set, and data store
+ * only those codes. Data are stored in byte buffers, so a data model can wrap
+ * memory it doesn't own, such as a mapped data model file. A data model may
+ * also be weighted, in which case each row stands for as many identical data
+ * as its weight.
  * @author Nathan P
  *
  */
@@ -12,39 +21,115 @@ public class DataModel {
 	
 	private static final String TAG = DataModel.class.getSimpleName();
 
-	private Datum[] mData;
+	// Data are stored by column. Each feature has its own column of feature 
+	// value codes, indexed by row
+	private ByteBuffer[] mFeatureColumns;
+	private ByteBuffer mLabelColumn;
+	// The arrays backing the columns, for faster reads of single codes. An
+	// entry is null if its column isn't backed by an array
+	private byte[][] mFeatureArrays;
+	private byte[] mLabelArray;
+	// Identifiers are stored as UTF-8 bytes. Row i's identifier spans 
+	// [mIdOffsets[i], mIdOffsets[i+1]) of mIdBytes. Both are null if the data 
+	// model has no identifiers
+	private IntBuffer mIdOffsets;
+	private ByteBuffer mIdBytes;
+	// Each row's weight, or null if every row has weight 1
+	private IntBuffer mWeights;
+	// The codes of the values each feature takes, in ascending order
+	private int[][] mFeatureDomains;
+	// Where the columns are in the data model file they were loaded from, 
+	// or null if they weren't loaded from one
+	private ColumnFile mColumnFile;
 	private Character[] mFeatureValues;
 	private Character[] mLabels;
 	private int mNumFeatures;
+	private int mDataSize;
 
 	/**
-	 * A private constructor for use by the builder. The public should use 
-	 * the builder to instantiate instances of this class
-	 * @param data All data in the data model
+	 * A constructor for use by the builder and by data model file loaders. 
+	 * The public should use the builder to instantiate instances of this 
+	 * class. Buffers are used as is, from index 0, and are never written to.
+	 * @param dataSize The number of data
+	 * @param featureColumns A column of feature value codes for each feature
+	 * @param labelColumn A column of label codes
+	 * @param idOffsets Offsets of each datum's unique identifier in the 
+	 *        identifier bytes, plus the end offset of the last. May be null
+	 * @param idBytes Each datum's unique identifier in UTF-8. May be null
+	 * @param weights Each row's weight. May be null if all weights are 1
+	 * @param featureDomains The codes of the values each feature takes, in 
+	 *        ascending order
 	 * @param featureValues A set of possible feature values
 	 * @param labels A set of labels
-	 * @param numFeatures The number of features that each datum contains
 	 */
-	private DataModel(Datum[] data, 
+	DataModel(int dataSize,
+			ByteBuffer[] featureColumns,
+			ByteBuffer labelColumn,
+			IntBuffer idOffsets,
+			ByteBuffer idBytes,
+			IntBuffer weights,
+			int[][] featureDomains,
 			Character[] featureValues, 
-			Character[] labels,
-			int numFeatures) 
+			Character[] labels) 
 	{
-		mData = data;
+		mDataSize = dataSize;
+		mFeatureColumns = featureColumns;
+		mLabelColumn = labelColumn;
+		mFeatureArrays = new byte[featureColumns.length][];
+		for(int i = 0; i < featureColumns.length; i++)
+			mFeatureArrays[i] = backingArray(featureColumns[i]);
+		mLabelArray = backingArray(labelColumn);
+		mIdOffsets = idOffsets;
+		mIdBytes = idBytes;
+		mWeights = weights;
+		mFeatureDomains = featureDomains;
 		mFeatureValues = featureValues;
 		mLabels = labels;
-		mNumFeatures = numFeatures;
+		mNumFeatures = featureColumns.length;
 	}
 
 	/**
 	 * Returns the feature value at the specified index. For each feature, 
-	 * a datum will be labeled with any one feature values.
+	 * a datum will be labeled with any one feature values. The index is the
+	 * feature value's code.
 	 * @return
 	 */
 	public Character getFeatureValue(int i) {
 		return mFeatureValues[i];
 	}
 
+	/**
+	 * Returns the codes of the feature values which the specified feature 
+	 * takes, in ascending order. Features needn't share a domain, and a 
+	 * feature's domain may be much smaller than the full feature value set.
+	 * The returned array must not be modified.
+	 * @param feature The feature's index
+	 * @return
+	 */
+	public int[] getFeatureDomain(int feature) {
+		return mFeatureDomains[feature];
+	}
+
+	/**
+	 * Lists the codes marked as seen, in ascending order
+	 * @param seen Whether each code was seen
+	 * @return
+	 */
+	private static int[] toDomain(boolean[] seen) {
+		int size = 0;
+		for(boolean s : seen) {
+			if(s)
+				size++;
+		}
+		int[] domain = new int[size];
+		size = 0;
+		for(int code = 0; code < seen.length; code++) {
+			if(seen[code])
+				domain[size++] = code;
+		}
+		return domain;
+	}
+
 	/**
 	 * Returns the number of feature values. This is the number of ways that 
 	 * a datum can be labeled for a given feature. For example, a data set with
@@ -65,19 +150,174 @@ public class DataModel {
 	
 	/**
 	 * Returns the label at the specified index
-	 * @param i Label's index
+	 * @param i Label's index, which is also its code
 	 * @return
 	 */
 	public Character getLabel(int i) {
 		return mLabels[i];
 	}
 
+	/**
+	 * Returns a view of every datum in the data model
+	 * @return
+	 */
 	public Datum[] getData() {
-		return mData;
+		Datum[] data = new Datum[mDataSize];
+		for(int i = 0; i < data.length; i++)
+			data[i] = new Datum(this, i);
+		return data;
+	}
+
+	/**
+	 * Returns a view of the datum at the specified row
+	 * @param row The datum's row
+	 * @return
+	 */
+	public Datum getDatum(int row) {
+		return new Datum(this, row);
 	}
 
 	public int getDataSize() {
-		return mData.length;
+		return mDataSize;
+	}
+
+	/**
+	 * Returns the column of feature value codes for the specified feature,
+	 * indexed by row. Callers must only read it with absolute gets.
+	 * @param feature The feature's index
+	 * @return
+	 */
+	public ByteBuffer getFeatureColumn(int feature) {
+		return mFeatureColumns[feature];
+	}
+
+	/**
+	 * Returns the column of label codes, indexed by row. Callers must only 
+	 * read it with absolute gets.
+	 * @return
+	 */
+	public ByteBuffer getLabelColumn() {
+		return mLabelColumn;
+	}
+
+	/**
+	 * Returns the feature value code of the datum at the specified row
+	 * @param row The datum's row
+	 * @param feature The feature's index
+	 * @return
+	 */
+	public int getFeatureCode(int row, int feature) {
+		byte[] array = mFeatureArrays[feature];
+		if(array != null)
+			return array[row] & 0xFF;
+		return mFeatureColumns[feature].get(row) & 0xFF;
+	}
+
+	/**
+	 * Returns the label code of the datum at the specified row
+	 * @param row The datum's row
+	 * @return
+	 */
+	public int getLabelCode(int row) {
+		if(mLabelArray != null)
+			return mLabelArray[row] & 0xFF;
+		return mLabelColumn.get(row) & 0xFF;
+	}
+
+	/**
+	 * Returns the unique identifier of the datum at the specified row, or 
+	 * null if this data model has no identifiers
+	 * @param row The datum's row
+	 * @return
+	 */
+	public String getId(int row) {
+		if(mIdOffsets == null)
+			return null;
+		int start = mIdOffsets.get(row);
+		byte[] id = new byte[mIdOffsets.get(row + 1) - start];
+		mIdBytes.get(start, id);
+		return new String(id, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the weight of the datum at the specified row, which is the 
+	 * number of identical data it stands for
+	 * @param row The datum's row
+	 * @return
+	 */
+	public int getWeight(int row) {
+		return (mWeights == null) ? 1 : mWeights.get(row);
+	}
+
+	/**
+	 * Checks whether any row of this data model may have a weight other 
+	 * than 1
+	 * @return
+	 */
+	public boolean isWeighted() {
+		return mWeights != null;
+	}
+
+	/**
+	 * Returns each row's weight, or null if this data model isn't weighted
+	 * @return
+	 */
+	IntBuffer getWeights() {
+		return mWeights;
+	}
+
+	/**
+	 * Returns where this data model's columns are in the data model file it
+	 * was loaded from, or null if it wasn't loaded from one
+	 * @return
+	 */
+	ColumnFile getColumnFile() {
+		return mColumnFile;
+	}
+
+	/**
+	 * Records where this data model's columns are in the data model file it
+	 * was loaded from
+	 * @param columnFile The columns' locations
+	 */
+	void setColumnFile(ColumnFile columnFile) {
+		mColumnFile = columnFile;
+	}
+
+	/**
+	 * Checks whether this data model's data are held off the heap, either in
+	 * direct buffers or mapped from a file
+	 * @return
+	 */
+	public boolean isOffHeap() {
+		return mLabelColumn.isDirect();
+	}
+
+	/**
+	 * Checks whether this data model has identifiers for its data
+	 * @return
+	 */
+	public boolean hasIds() {
+		return mIdOffsets != null;
+	}
+
+	/**
+	 * Returns the offsets of each datum's identifier in the identifier bytes,
+	 * plus the end offset of the last, or null if this data model has no 
+	 * identifiers
+	 * @return
+	 */
+	IntBuffer getIdOffsets() {
+		return mIdOffsets;
+	}
+
+	/**
+	 * Returns every datum's identifier in UTF-8, or null if this data model 
+	 * has no identifiers
+	 * @return
+	 */
+	ByteBuffer getIdBytes() {
+		return mIdBytes;
 	}
 	
 	/**
@@ -90,21 +330,102 @@ public class DataModel {
 	}
 
 	/**
-	 * A data model builder
+	 * Returns the array backing a column, if the column is a whole array that
+	 * can be read directly
+	 * @param column The column
+	 * @return The backing array, or null if there isn't a usable one
+	 */
+	private static byte[] backingArray(ByteBuffer column) {
+		if(column.hasArray() && column.arrayOffset() == 0)
+			return column.array();
+		return null;
+	}
+
+	/**
+	 * A data model builder. By default data are held on the heap. An off-heap
+	 * builder holds its data, and the data model it builds, in direct 
+	 * buffers instead, so that large data sets don't weigh on the heap or on
+	 * garbage collection. Off-heap memory is limited by the JVM's 
+	 * -XX:MaxDirectMemorySize setting. A deduplicating builder collapses data
+	 * with identical features and labels into one row, weighted by the number
+	 * of data collapsed, and keeps the first of their identifiers.
 	 * @author Nathan P
 	 *
 	 */
 	public static class Builder {
 
-		private ArrayList<Datum> mData;
-		private Set<Character> mFeatureValues;
-		private Set<Character> mLabels;
+		// Codes are stored as bytes, so this caps the dictionary size
+		private static final int MAX_CODES = 256;
+		private static final int INITIAL_CAPACITY = 64;
+		// Marks a feature value with no code yet in the code cache
+		private static final int NO_CODE = -1;
+
+		private boolean mOffHeap;
+		private boolean mDeduplicate;
+		// Columns of codes, grown as data are added. Only the first mSize 
+		// rows are in use
+		private ByteBuffer[] mFeatureColumns;
+		private ByteBuffer mLabelColumn;
+		private int mCapacity;
+		private int mSize;
+		// Identifiers as UTF-8 bytes. Row i's identifier spans 
+		// [mIdOffsets[i], mIdOffsets[i+1]) of mIdBytes
+		private ByteBuffer mIdBytes;
+		private IntBuffer mIdOffsets;
+		// When deduplicating, each row's weight, and the row holding each 
+		// distinct combination of feature and label codes. Null otherwise
+		private IntBuffer mWeights;
+		private Map<ByteBuffer, Integer> mRowIndex;
+		// Dictionaries from feature value or label to the code it was 
+		// assigned when first seen. Codes are reassigned at build time.
+		private Map<Character, Integer> mFeatureValues;
+		// Whether each feature has taken each provisional feature value code
+		private boolean[][] mFeatureDomains;
+		private Map<Character, Integer> mLabels;
+		// Codes of single-byte feature values, indexed by value, so that 
+		// encoding them skips the dictionary lookup
+		private int[] mFeatureCodeCache;
 		private int mNumFeatures;
 
+		/**
+		 * Builds a builder which holds data on the heap
+		 */
 		public Builder() {
-			mData = new ArrayList<Datum>();
-			mFeatureValues = new HashSet<Character>();
-			mLabels = new HashSet<Character>(2);
+			this(false);
+		}
+
+		/**
+		 * Builds a builder which doesn't deduplicate data
+		 * @param offHeap True to hold data, and the data model built, off the
+		 *        heap
+		 */
+		public Builder(boolean offHeap) {
+			this(offHeap, false);
+		}
+
+		/**
+		 * Builds a builder
+		 * @param offHeap True to hold data, and the data model built, off the
+		 *        heap
+		 * @param deduplicate True to collapse identical data into weighted 
+		 *        rows
+		 */
+		public Builder(boolean offHeap, boolean deduplicate) {
+			mOffHeap = offHeap;
+			mDeduplicate = deduplicate;
+			mCapacity = INITIAL_CAPACITY;
+			mLabelColumn = allocate(mCapacity);
+			mSize = 0;
+			mIdBytes = allocate(INITIAL_CAPACITY);
+			mIdOffsets = allocateInts(mCapacity + 1);
+			if(deduplicate) {
+				mWeights = allocateInts(mCapacity);
+				mRowIndex = new HashMap<ByteBuffer, Integer>();
+			}
+			mFeatureValues = new HashMap<Character, Integer>();
+			mLabels = new HashMap<Character, Integer>(2);
+			mFeatureCodeCache = new int[MAX_CODES];
+			Arrays.fill(mFeatureCodeCache, NO_CODE);
 			mNumFeatures = -1;
 		}
 
@@ -112,35 +433,245 @@ public class DataModel {
 		 * Adds a datum to the data set. Throws an IllegalStateException if 
 		 * this data has a different feature length than other data in the 
 		 * data model, or if the addition of this datum increases the label set
-		 * above size 2.
+		 * or the feature value set above size 256.
 		 * @param id The new datum's unique identifier
 		 * @param label The new datum's label (classification)
 		 * @param feature A string of feature values for the new datum
 		 */
 		public void addDatum(String id, char label, String features) {
-			mData.add(new Datum(id, label, features));
-			
 			int featureLength = features.length();
+			int row = addRow(id, label, featureLength);
+			
+			// Encode features into their columns, adding them to the feature 
+			// value set
+			for(int i = 0; i < featureLength; i++)
+				putFeature(i, row, encodeFeature(features.charAt(i)));
+			deduplicateRow(row, 1);
+		}
+
+		/**
+		 * Adds a datum to the data set, reading its feature values as 
+		 * single-byte characters. This lets parsers add data without building
+		 * a string of feature values. Throws an IllegalStateException under the
+		 * same conditions as addDatum(String, char, String).
+		 * @param id The new datum's unique identifier
+		 * @param label The new datum's label (classification)
+		 * @param features Buffer holding the new datum's feature values
+		 * @param offset Index of the first feature value in the buffer
+		 * @param length Number of feature values
+		 */
+		public void addDatum(String id, char label, 
+				byte[] features, int offset, int length) 
+		{
+			int row = addRow(id, label, length);
 			
-			// Add features to the feature value set
-			for(int i = 0; i < featureLength; i++) {
-				mFeatureValues.add(features.charAt(i));
+			// Encode features into their columns, adding them to the feature 
+			// value set
+			for(int i = 0; i < length; i++) {
+				putFeature(i, row, 
+						encodeFeature((char) (features[offset + i] & 0xFF)));
+			}
+			deduplicateRow(row, 1);
+		}
+
+		/**
+		 * Appends every datum added to another builder to this one, in order.
+		 * This lets data be parsed by several builders concurrently, and 
+		 * then merged. Throws an IllegalStateException under the same 
+		 * conditions as addDatum(). A builder which doesn't deduplicate can't
+		 * take the data of one that does, since it can't hold weights.
+		 * @param other Builder whose data to append
+		 */
+		public void addAll(Builder other) {
+			if(other.mSize == 0)
+				return;
+			if(other.mDeduplicate && !mDeduplicate)
+				throw new IllegalArgumentException("Can't add deduplicated "
+						+ "data to a builder which doesn't deduplicate");
+
+			// Translate the other builder's codes into codes of this one
+			byte[] labelRemap = new byte[other.mLabels.size()];
+			for(Map.Entry<Character, Integer> entry : other.mLabels.entrySet())
+				labelRemap[entry.getValue()] = encode(mLabels, entry.getKey(), 
+						"Label types");
+			checkFeatureLength(other.mNumFeatures);
+			byte[] featureRemap = new byte[other.mFeatureValues.size()];
+			for(Map.Entry<Character, Integer> entry : 
+					other.mFeatureValues.entrySet()) 
+			{
+				featureRemap[entry.getValue()] = encodeFeature(entry.getKey());
+			}
+
+			// When deduplicating, each of the other builder's rows may 
+			// collapse into one of ours
+			if(mDeduplicate) {
+				for(int j = 0; j < other.mSize; j++)
+					addRow(other, j, featureRemap, labelRemap);
+				return;
+			}
+
+			// Copy the other builder's columns onto the end of ours
+			ensureCapacity(mSize + other.mSize);
+			for(int i = 0; i < mNumFeatures; i++) {
+				ByteBuffer column = mFeatureColumns[i];
+				ByteBuffer otherColumn = other.mFeatureColumns[i];
+				for(int j = 0; j < other.mSize; j++) {
+					column.put(mSize + j, 
+							featureRemap[otherColumn.get(j) & 0xFF]);
+				}
+				for(int code = 0; code < featureRemap.length; code++) {
+					if(other.mFeatureDomains[i][code])
+						mFeatureDomains[i][featureRemap[code] & 0xFF] = true;
+				}
+			}
+			for(int j = 0; j < other.mSize; j++) {
+				mLabelColumn.put(mSize + j, 
+						labelRemap[other.mLabelColumn.get(j) & 0xFF]);
 			}
+			
+			// Copy the other builder's identifiers, shifting their offsets
+			int idStart = mIdOffsets.get(mSize);
+			int otherIdLength = other.mIdOffsets.get(other.mSize);
+			ensureIdCapacity((long) idStart + otherIdLength);
+			mIdBytes.put(idStart, other.mIdBytes, 0, otherIdLength);
+			for(int j = 1; j <= other.mSize; j++)
+				mIdOffsets.put(mSize + j, idStart + other.mIdOffsets.get(j));
+			mSize += other.mSize;
+		}
 
+		/**
+		 * Adds a row with the specified identifier and label, validating the
+		 * label set and the feature length. The caller fills in the row's 
+		 * feature values.
+		 * @param id The new datum's unique identifier
+		 * @param label The new datum's label (classification)
+		 * @param featureLength The new datum's number of features
+		 * @return The new row's index
+		 */
+		private int addRow(String id, char label, int featureLength) {
 			// Add label to the label set
-			mLabels.add(label);
-			// Throw an exception if the labeling has exceeded two types
-			if(mLabels.size() > 2)
-				throw new IllegalStateException("Label types have exceeded size 2. " 
-						+ "The decision tree can only classify data models with "
-						+ "binary classification");
+			byte labelCode = encode(mLabels, label, "Label types");
+			checkFeatureLength(featureLength);
+			
+			ensureCapacity(mSize + 1);
+			mLabelColumn.put(mSize, labelCode);
 			
-			// Throw an exception if this datum has a different feature size
-			if(mNumFeatures == -1)
+			byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+			appendId(ByteBuffer.wrap(idBytes), 0, idBytes.length);
+			return mSize++;
+		}
+
+		/**
+		 * Adds a row of another builder to this one, translating its codes.
+		 * The row is collapsed into an identical row, if there is one.
+		 * @param other Builder holding the row
+		 * @param row The row's index in the other builder
+		 * @param featureRemap Table mapping the other builder's feature value 
+		 *        codes to this builder's
+		 * @param labelRemap Table mapping the other builder's label codes to 
+		 *        this builder's
+		 */
+		private void addRow(Builder other, int row, 
+				byte[] featureRemap, byte[] labelRemap) 
+		{
+			ensureCapacity(mSize + 1);
+			for(int i = 0; i < mNumFeatures; i++) {
+				putFeature(i, mSize, 
+						featureRemap[other.mFeatureColumns[i].get(row) & 0xFF]);
+			}
+			mLabelColumn.put(mSize, 
+					labelRemap[other.mLabelColumn.get(row) & 0xFF]);
+			int idStart = other.mIdOffsets.get(row);
+			appendId(other.mIdBytes, idStart, 
+					other.mIdOffsets.get(row + 1) - idStart);
+			int weight = other.mDeduplicate ? other.mWeights.get(row) : 1;
+			deduplicateRow(mSize++, weight);
+		}
+
+		/**
+		 * Appends an identifier for the row being added
+		 * @param source Buffer holding the identifier in UTF-8
+		 * @param offset Index of the identifier's first byte in the buffer
+		 * @param length Length of the identifier in bytes
+		 */
+		private void appendId(ByteBuffer source, int offset, int length) {
+			int idStart = mIdOffsets.get(mSize);
+			ensureIdCapacity((long) idStart + length);
+			mIdBytes.put(idStart, source, offset, length);
+			mIdOffsets.put(mSize + 1, idStart + length);
+		}
+
+		/**
+		 * When deduplicating, gives the last row added the specified weight,
+		 * or removes it and adds its weight to an identical row if there is 
+		 * one
+		 * @param row The index of the last row added
+		 * @param weight The row's weight
+		 */
+		private void deduplicateRow(int row, int weight) {
+			if(!mDeduplicate)
+				return;
+			
+			byte[] key = new byte[mNumFeatures + 1];
+			for(int i = 0; i < mNumFeatures; i++)
+				key[i] = mFeatureColumns[i].get(row);
+			key[mNumFeatures] = mLabelColumn.get(row);
+			
+			Integer existing = mRowIndex.get(ByteBuffer.wrap(key));
+			if(existing == null) {
+				mRowIndex.put(ByteBuffer.wrap(key), row);
+				mWeights.put(row, weight);
+			} else {
+				mWeights.put(existing, 
+						Math.addExact(mWeights.get(existing), weight));
+				mSize--;
+			}
+		}
+
+		/**
+		 * Throws an IllegalStateException if data with the specified feature
+		 * length can't be added to the data model, because other data have a
+		 * different feature size
+		 * @param featureLength The number of features of the data to add
+		 */
+		private void checkFeatureLength(int featureLength) {
+			if(mNumFeatures == -1) {
 				mNumFeatures = featureLength;
-			else if(mNumFeatures != featureLength)
+				mFeatureColumns = new ByteBuffer[featureLength];
+				for(int i = 0; i < featureLength; i++)
+					mFeatureColumns[i] = allocate(mCapacity);
+				mFeatureDomains = new boolean[featureLength][MAX_CODES];
+			} else if(mNumFeatures != featureLength) {
 				throw new IllegalStateException("All data must have the same "
 						+ "number of features");
+			}
+		}
+
+		/**
+		 * Stores a feature value code in a feature's column, adding it to the
+		 * feature's domain
+		 * @param feature The feature's index
+		 * @param row The row to store at
+		 * @param code The feature value's code
+		 */
+		private void putFeature(int feature, int row, byte code) {
+			mFeatureColumns[feature].put(row, code);
+			mFeatureDomains[feature][code & 0xFF] = true;
+		}
+
+		/**
+		 * Returns the code for the specified feature value, assigning the next
+		 * unused code if the value hasn't been seen before
+		 * @param value The feature value to encode
+		 * @return The feature value's code
+		 */
+		private byte encodeFeature(char value) {
+			if(value < MAX_CODES && mFeatureCodeCache[value] != NO_CODE)
+				return (byte) mFeatureCodeCache[value];
+			byte code = encode(mFeatureValues, value, "Feature values");
+			if(value < MAX_CODES)
+				mFeatureCodeCache[value] = code & 0xFF;
+			return code;
 		}
 
 		/**
@@ -155,61 +686,262 @@ public class DataModel {
 				throw new IllegalStateException("The data model contains only "
 						+ "one label");
 
-			// Put everything in arrays
-			Datum[] data = new Datum[mData.size()];
-			mData.toArray(data);
+			// Put the dictionaries in arrays, in sorted order, and find how 
+			// the codes assigned while adding data map to their final codes
 			Character[] featureValues = new Character[mFeatureValues.size()];
-			mFeatureValues.toArray(featureValues);
+			byte[] featureRemap = sortDictionary(mFeatureValues, featureValues);
 			Character[] labels = new Character[mLabels.size()];
-			mLabels.toArray(labels);
+			byte[] labelRemap = sortDictionary(mLabels, labels);
+
+			// Trim the columns to size, recoding as we go, and recode the 
+			// feature domains
+			ByteBuffer[] featureColumns = new ByteBuffer[mNumFeatures];
+			int[][] featureDomains = new int[mNumFeatures][];
+			for(int i = 0; i < mNumFeatures; i++) {
+				featureColumns[i] = recode(mFeatureColumns[i], featureRemap);
+				boolean[] seen = new boolean[featureValues.length];
+				for(int code = 0; code < featureRemap.length; code++) {
+					if(mFeatureDomains[i][code])
+						seen[featureRemap[code] & 0xFF] = true;
+				}
+				featureDomains[i] = toDomain(seen);
+			}
+			ByteBuffer labelColumn = recode(mLabelColumn, labelRemap);
+
+			// Trim the identifiers to size
+			int idLength = mIdOffsets.get(mSize);
+			ByteBuffer idBytes = allocate(idLength);
+			idBytes.put(0, mIdBytes, 0, idLength);
+			IntBuffer idOffsets = allocateInts(mSize + 1);
+			idOffsets.put(0, mIdOffsets, 0, mSize + 1);
+			
+			// Trim the weights to size
+			IntBuffer weights = null;
+			if(mDeduplicate) {
+				weights = allocateInts(mSize);
+				weights.put(0, mWeights, 0, mSize);
+			}
 
-			return new DataModel(data, featureValues, labels, mNumFeatures);
+			return new DataModel(mSize, featureColumns, labelColumn, 
+					idOffsets, idBytes, weights, featureDomains, featureValues, 
+					labels);
+		}
+
+		/**
+		 * Grows the columns, if needed, so that they can hold the specified 
+		 * number of rows
+		 * @param capacity Number of rows the columns must hold
+		 */
+		private void ensureCapacity(int capacity) {
+			if(capacity <= mCapacity)
+				return;
+			int newCapacity = (int) Math.min(Integer.MAX_VALUE - 1, 
+					Math.max(capacity, mCapacity * 2L));
+			mLabelColumn = grow(mLabelColumn, newCapacity);
+			for(int i = 0; i < mNumFeatures; i++)
+				mFeatureColumns[i] = grow(mFeatureColumns[i], newCapacity);
+			IntBuffer idOffsets = allocateInts(newCapacity + 1);
+			idOffsets.put(0, mIdOffsets, 0, mSize + 1);
+			mIdOffsets = idOffsets;
+			if(mDeduplicate) {
+				IntBuffer weights = allocateInts(newCapacity);
+				weights.put(0, mWeights, 0, mSize);
+				mWeights = weights;
+			}
+			mCapacity = newCapacity;
+		}
+
+		/**
+		 * Grows the identifier bytes, if needed, so that they can hold the 
+		 * specified number of bytes
+		 * @param capacity Number of bytes the identifier bytes must hold
+		 */
+		private void ensureIdCapacity(long capacity) {
+			if(capacity <= mIdBytes.capacity())
+				return;
+			if(capacity > Integer.MAX_VALUE)
+				throw new IllegalStateException("Identifiers have exceeded " 
+						+ Integer.MAX_VALUE + " bytes");
+			mIdBytes = grow(mIdBytes, (int) Math.min(Integer.MAX_VALUE, 
+					Math.max(capacity, mIdBytes.capacity() * 2L)));
+		}
+
+		/**
+		 * Copies a buffer into a new, larger buffer
+		 * @param buffer Buffer to grow
+		 * @param capacity The new buffer's capacity
+		 * @return The new buffer
+		 */
+		private ByteBuffer grow(ByteBuffer buffer, int capacity) {
+			ByteBuffer grown = allocate(capacity);
+			grown.put(0, buffer, 0, buffer.capacity());
+			return grown;
+		}
+
+		/**
+		 * Copies the in-use rows of a column, mapping each code through the 
+		 * specified table
+		 * @param column Column to recode
+		 * @param remap Table mapping old codes to new codes
+		 * @return The recoded column
+		 */
+		private ByteBuffer recode(ByteBuffer column, byte[] remap) {
+			ByteBuffer recoded = allocate(mSize);
+			for(int i = 0; i < mSize; i++)
+				recoded.put(i, remap[column.get(i) & 0xFF]);
+			return recoded;
+		}
+
+		/**
+		 * Allocates a byte buffer on or off the heap, as this builder does
+		 * @param capacity The buffer's capacity
+		 * @return
+		 */
+		private ByteBuffer allocate(int capacity) {
+			return mOffHeap ? 
+					ByteBuffer.allocateDirect(capacity) : 
+					ByteBuffer.allocate(capacity);
+		}
+
+		/**
+		 * Allocates an int buffer on or off the heap, as this builder does
+		 * @param capacity The buffer's capacity
+		 * @return
+		 */
+		private IntBuffer allocateInts(int capacity) {
+			return mOffHeap ? 
+					ByteBuffer.allocateDirect(
+							Math.multiplyExact(capacity, Integer.BYTES))
+						.asIntBuffer() : 
+					IntBuffer.allocate(capacity);
+		}
+
+		/**
+		 * Returns the code for the specified value, assigning the next unused 
+		 * code if the value hasn't been seen before
+		 * @param dictionary Dictionary of values to codes
+		 * @param value The value to encode
+		 * @param kind What the values are, for the error message
+		 * @return The value's code
+		 * @throws IllegalStateException If the value would be the dictionary's
+		 *         257th
+		 */
+		private static byte encode(Map<Character, Integer> dictionary, 
+								char value, String kind) 
+		{
+			Integer code = dictionary.get(value);
+			if(code == null) {
+				code = dictionary.size();
+				if(code >= MAX_CODES)
+					throw new IllegalStateException(kind + " have exceeded "
+							+ "size " + MAX_CODES);
+				dictionary.put(value, code);
+			}
+			return (byte) code.intValue();
+		}
+
+		/**
+		 * Sorts the values of a dictionary into the specified array, so that 
+		 * each value's final code is its index in the array
+		 * @param dictionary Dictionary of values to the codes they were first
+		 *        assigned
+		 * @param values Array to fill with the sorted values
+		 * @return A table mapping first-assigned codes to final codes
+		 */
+		private static byte[] sortDictionary(Map<Character, Integer> dictionary,
+											Character[] values) 
+		{
+			dictionary.keySet().toArray(values);
+			Arrays.sort(values);
+			byte[] remap = new byte[values.length];
+			for(int i = 0; i < values.length; i++)
+				remap[dictionary.get(values[i])] = (byte) i;
+			return remap;
 		}
 
 	}
 
 	/**
-	 * Represents a datum for the decision tree
+	 * Represents a datum for the decision tree. This is a lightweight view 
+	 * of one row of the data model's columns. Its label and features are 
+	 * codes, which index into the data model's label and feature value sets.
 	 * @author Nathan P
 	 */
 	public static class Datum {
 
-		
-		private String mIdentifier; // This datum's unique ID
-		private char mLabel;
-		private String mFeatures;
+		private DataModel mDataModel;
+		private int mRow;
 
 		/**
-		 * Private constructor. This class should only be instantiated with
-		 * the builder
-		 * @param id The new datum's unique identifier
-		 * @param label The new datum's label (classification)
-		 * @param feature A string of feature values for the new datum
+		 * Private constructor. This class should only be instantiated by the
+		 * data model
+		 * @param dataModel The data model holding this datum
+		 * @param row This datum's row in the data model
 		 */
-		private Datum(String id, char label, String features) {
-			mLabel = label;
-			mIdentifier = id;
-			mFeatures = features;
+		private Datum(DataModel dataModel, int row) {
+			mDataModel = dataModel;
+			mRow = row;
 		}
 
 		public String getId() {
-			return mIdentifier;
+			return mDataModel.getId(mRow);
+		}
+
+		/**
+		 * Returns this datum's row in the data model
+		 * @return
+		 */
+		public int getRow() {
+			return mRow;
 		}
 
 		public int getNumFeatures() {
-			return mFeatures.length();
+			return mDataModel.getNumFeatures();
 		}
 
+		/**
+		 * Returns this datum's feature values, decoded, as a string
+		 * @return
+		 */
 		public String getFeatures() {
-			return mFeatures;
+			char[] features = new char[getNumFeatures()];
+			for(int i = 0; i < features.length; i++)
+				features[i] = getFeature(i);
+			return new String(features);
 		}
 
+		/**
+		 * Returns this datum's value for the specified feature, decoded
+		 * @param i Feature's index
+		 * @return
+		 */
 		public char getFeature(int i) {
-			return mFeatures.charAt(i);
+			return mDataModel.getFeatureValue(getFeatureCode(i));
+		}
+
+		/**
+		 * Returns the code of this datum's value for the specified feature
+		 * @param i Feature's index
+		 * @return
+		 */
+		public int getFeatureCode(int i) {
+			return mDataModel.getFeatureCode(mRow, i);
 		}
 
+		/**
+		 * Returns this datum's label, decoded
+		 * @return
+		 */
 		public char getLabel() {
-			return mLabel;
+			return mDataModel.getLabel(getLabelCode());
+		}
+
+		/**
+		 * Returns the code of this datum's label
+		 * @return
+		 */
+		public int getLabelCode() {
+			return mDataModel.getLabelCode(mRow);
 		}
 	}
 }
@@ -0,0 +1,327 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Reads and writes data models in a compact binary format, so that data
+ * models used over and over don't have to be reparsed from text. The format
+ * is a header followed by fixed-width columns:
+ * <pre>
+ * int     magic number
+ * int     format version
+ * int     number of data (rows)
+ * int     number of features
+ * int     number of feature values, followed by each feature value as a char
+ * int     number of labels, followed by each label as a char
+ * int     flags
+ * byte[]  label codes, one per row
+ * byte[]  feature value codes, one column of one per row for each feature
+ * int[]   row weights, one per row (optional)
+ * int[]   identifier offsets, one per row plus an end offset (optional)
+ * byte[]  identifiers in UTF-8 (optional)
+ * byte[]  feature domains: for each feature, an int count followed by the
+ *         codes of the values it takes
+ * </pre>
+ * Codes index into the feature value and label sets. Loading maps the file
+ * and wraps the columns in place, without copying them.
+ * @author Nathan P
+ *
+ */
+public class DataModelFile {
+
+	private static final String TAG = DataModelFile.class.getSimpleName();
+
+	// File extension used for data model files
+	public static final String EXTENSION = ".dtm";
+
+	private static final int MAGIC = 0x44544D46; // "DTMF"
+	private static final int VERSION = 1;
+
+	// Set in the flags if the file has an identifier section
+	private static final int FLAG_IDS = 1;
+	// Set in the flags if the file has a weight section
+	private static final int FLAG_WEIGHTS = 2;
+
+	/**
+	 * Writes the data model to the specified file, including identifiers if
+	 * the data model has them
+	 * @param dataModel The data model to write
+	 * @param filePath Path to file
+	 * @throws IOException If the file can't be written
+	 */
+	public static void write(DataModel dataModel, String filePath)
+			throws IOException
+	{
+		write(dataModel, filePath, dataModel.hasIds());
+	}
+
+	/**
+	 * Writes the data model to the specified file. The data model is written
+	 * to a temporary file beside it first, which then replaces the file, so
+	 * a data model may be written over the file it was loaded from, and a 
+	 * failed write leaves the file as it was.
+	 * @param dataModel The data model to write
+	 * @param filePath Path to file
+	 * @param includeIds True to write the identifier section. Ignored if the
+	 *        data model has no identifiers
+	 * @throws IOException If the file can't be written
+	 */
+	public static void write(DataModel dataModel, String filePath,
+			boolean includeIds) throws IOException
+	{
+		File target = new File(filePath).getAbsoluteFile();
+		File temp = File.createTempFile(target.getName(), ".tmp", 
+				target.getParentFile());
+		try {
+			writeTo(dataModel, temp, includeIds);
+			Files.move(temp.toPath(), target.toPath(), 
+					StandardCopyOption.REPLACE_EXISTING, 
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Writes the data model to the specified new file
+	 * @param dataModel The data model to write
+	 * @param target File to write
+	 * @param includeIds True to write the identifier section. Ignored if the
+	 *        data model has no identifiers
+	 * @throws IOException If the file can't be written
+	 */
+	private static void writeTo(DataModel dataModel, File target, 
+			boolean includeIds) throws IOException
+	{
+		includeIds &= dataModel.hasIds();
+		int numFeatureVals = dataModel.getNumFeatureValues();
+		Character[] labels = dataModel.getLabels();
+
+		try(RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+			FileChannel channel = file.getChannel();
+
+			// Write the header
+			ByteBuffer header = ByteBuffer.allocate(7 * Integer.BYTES
+					+ (numFeatureVals + labels.length) * Character.BYTES);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(dataModel.getDataSize());
+			header.putInt(dataModel.getNumFeatures());
+			header.putInt(numFeatureVals);
+			for(int i = 0; i < numFeatureVals; i++)
+				header.putChar(dataModel.getFeatureValue(i));
+			header.putInt(labels.length);
+			for(Character label : labels)
+				header.putChar(label);
+			int flags = includeIds ? FLAG_IDS : 0;
+			if(dataModel.isWeighted())
+				flags |= FLAG_WEIGHTS;
+			header.putInt(flags);
+			header.flip();
+			writeFully(channel, header);
+
+			// Write the columns
+			writeFully(channel, slice(dataModel.getLabelColumn(),
+					dataModel.getDataSize()));
+			for(int i = 0; i < dataModel.getNumFeatures(); i++) {
+				writeFully(channel, slice(dataModel.getFeatureColumn(i),
+						dataModel.getDataSize()));
+			}
+
+			// Write the weights
+			if(dataModel.isWeighted())
+				writeInts(channel, dataModel.getWeights(), 
+						dataModel.getDataSize());
+
+			// Write the identifiers
+			if(includeIds) {
+				IntBuffer idOffsets = dataModel.getIdOffsets();
+				int numOffsets = dataModel.getDataSize() + 1;
+				writeInts(channel, idOffsets, numOffsets);
+				writeFully(channel, slice(dataModel.getIdBytes(),
+						idOffsets.get(numOffsets - 1)));
+			}
+
+			// Write the feature domains
+			int numFeatures = dataModel.getNumFeatures();
+			int domainsSize = numFeatures * Integer.BYTES;
+			for(int i = 0; i < numFeatures; i++)
+				domainsSize += dataModel.getFeatureDomain(i).length;
+			ByteBuffer domains = ByteBuffer.allocate(domainsSize);
+			for(int i = 0; i < numFeatures; i++) {
+				int[] domain = dataModel.getFeatureDomain(i);
+				domains.putInt(domain.length);
+				for(int code : domain)
+					domains.put((byte) code);
+			}
+			domains.flip();
+			writeFully(channel, domains);
+		}
+	}
+
+	/**
+	 * Loads a data model from the specified file. The data model's columns
+	 * are mapped from the file rather than read into memory, and it 
+	 * remembers where they are in the file, so that they can also be 
+	 * streamed from it.
+	 * @param filePath Path to file
+	 * @return The data model stored in the file
+	 * @throws IOException If the file can't be read, or isn't a data model
+	 *         file
+	 */
+	public static DataModel load(String filePath) throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+			FileChannel channel = file.getChannel();
+
+			// Read the fixed size part of the header to find the full size
+			ByteBuffer header = map(channel, 0, 5 * Integer.BYTES);
+			if(header.getInt() != MAGIC)
+				throw new IOException(filePath + " is not a data model file");
+			int version = header.getInt();
+			if(version != VERSION)
+				throw new IOException(filePath + " has an unsupported version");
+			int dataSize = header.getInt();
+			int numFeatures = header.getInt();
+			int numFeatureVals = header.getInt();
+			long pos = header.position();
+
+			// Read the dictionaries
+			ByteBuffer dictionary = map(channel, pos,
+					numFeatureVals * Character.BYTES + Integer.BYTES);
+			Character[] featureValues = new Character[numFeatureVals];
+			for(int i = 0; i < numFeatureVals; i++)
+				featureValues[i] = dictionary.getChar();
+			int numLabels = dictionary.getInt();
+			pos += dictionary.position();
+			dictionary = map(channel, pos,
+					numLabels * Character.BYTES + Integer.BYTES);
+			Character[] labels = new Character[numLabels];
+			for(int i = 0; i < numLabels; i++)
+				labels[i] = dictionary.getChar();
+			int flags = dictionary.getInt();
+			pos += dictionary.position();
+
+			// Wrap the columns
+			long labelOffset = pos;
+			ByteBuffer labelColumn = map(channel, pos, dataSize);
+			pos += dataSize;
+			ByteBuffer[] featureColumns = new ByteBuffer[numFeatures];
+			long[] featureOffsets = new long[numFeatures];
+			for(int i = 0; i < numFeatures; i++) {
+				featureOffsets[i] = pos;
+				featureColumns[i] = map(channel, pos, dataSize);
+				pos += dataSize;
+			}
+
+			// Wrap the weights
+			IntBuffer weights = null;
+			if((flags & FLAG_WEIGHTS) != 0) {
+				long weightsSize = (long) dataSize * Integer.BYTES;
+				weights = map(channel, pos, weightsSize).asIntBuffer();
+				pos += weightsSize;
+			}
+
+			// Wrap the identifiers
+			IntBuffer idOffsets = null;
+			ByteBuffer idBytes = null;
+			if((flags & FLAG_IDS) != 0) {
+				long offsetsSize = (dataSize + 1L) * Integer.BYTES;
+				idOffsets = map(channel, pos, offsetsSize).asIntBuffer();
+				pos += offsetsSize;
+				idBytes = map(channel, pos, idOffsets.get(dataSize));
+				pos += idBytes.capacity();
+			}
+
+			// Read the feature domains
+			int[][] featureDomains = new int[numFeatures][];
+			for(int i = 0; i < numFeatures; i++) {
+				int size = map(channel, pos, Integer.BYTES).getInt();
+				pos += Integer.BYTES;
+				if(size > numFeatureVals)
+					throw new IOException(filePath 
+							+ " is truncated or corrupt");
+				ByteBuffer domain = map(channel, pos, size);
+				pos += size;
+				featureDomains[i] = new int[size];
+				for(int j = 0; j < size; j++)
+					featureDomains[i][j] = domain.get(j) & 0xFF;
+			}
+
+			if(pos != channel.size())
+				throw new IOException(filePath + " is truncated or corrupt");
+
+			DataModel dataModel = new DataModel(dataSize, featureColumns, 
+					labelColumn, idOffsets, idBytes, weights, featureDomains, 
+					featureValues, labels);
+			dataModel.setColumnFile(new ColumnFile(filePath, dataSize, 
+					labelOffset, featureOffsets));
+			return dataModel;
+		}
+	}
+
+	/**
+	 * Maps a read-only region of a file, checking that the file is long
+	 * enough to hold it
+	 * @param channel Channel of the file
+	 * @param pos Offset of the region
+	 * @param size Size of the region
+	 * @return
+	 * @throws IOException If the file is too short or can't be mapped
+	 */
+	private static ByteBuffer map(FileChannel channel, long pos, long size)
+			throws IOException
+	{
+		if(pos + size > channel.size())
+			throw new IOException("Data model file is truncated or corrupt");
+		return channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+	}
+
+	/**
+	 * Returns a view of the first bytes of a buffer, positioned to be written
+	 * out
+	 * @param buffer Buffer to view
+	 * @param length Number of bytes to view
+	 * @return
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int length) {
+		ByteBuffer view = buffer.duplicate();
+		view.clear();
+		view.limit(length);
+		return view;
+	}
+
+	/**
+	 * Writes the first ints of a buffer to a channel
+	 * @param channel Channel to write to
+	 * @param ints Buffer to write
+	 * @param length Number of ints to write
+	 * @throws IOException If the channel can't be written to
+	 */
+	private static void writeInts(FileChannel channel, IntBuffer ints,
+			int length) throws IOException
+	{
+		ByteBuffer bytes = ByteBuffer.allocate(length * Integer.BYTES);
+		for(int i = 0; i < length; i++)
+			bytes.putInt(ints.get(i));
+		bytes.flip();
+		writeFully(channel, bytes);
+	}
+
+	/**
+	 * Writes all of a buffer's remaining bytes to a channel
+	 * @param channel Channel to write to
+	 * @param buffer Buffer to write
+	 * @throws IOException If the channel can't be written to
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer)
+			throws IOException
+	{
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+}
@@ -1,4 +1,16 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * A decision tree, which can classify any data representable by a DatModel.
@@ -12,10 +24,116 @@ class DecisionTree {
 	private DataModel mDataModel;
 	private DTreeNode mRootNode;
 	private double mTreeAccuracy;
+	
+	// The rows of the data model currently being trained on. Each node owns 
+	// a range of this array, which is partitioned in place when the node 
+	// splits. Level-wise training instead compacts it as rows reach leaves
+	private int[] mRows;
+	
+	// A bitset index over the data model, used to count the histograms of 
+	// dense nodes when the data model has few enough feature values and 
+	// labels. Built when first trained on depth first, and null until then
+	// or if the data model isn't suitable
+	private BitsetIndex mBitsetIndex;
+	
+	// Each row's weight, if the data model is weighted. Null otherwise, in 
+	// which case every row counts once
+	private int[] mWeights;
+	// The weight each row is trained and tuned with: its weight, split 
+	// between training and tuning when reduced-error pruning holds out a 
+	// tuning set. Null if the data model isn't weighted
+	private int[] mTrainWeights;
+	private int[] mTuneWeights;
+
+	/**
+	 * The order in which the tree is grown
+	 */
+	public enum TrainingMode {
+		// Each node's subtree is built before its next sibling's
+		DEPTH_FIRST,
+		// Every node at a depth is split before any node below it, with a 
+		// single pass over the columns per depth
+		LEVEL_WISE,
+		// Like LEVEL_WISE, but the columns are streamed from the data model
+		// file the data model was loaded from, through a buffer bounded by 
+		// the memory budget
+		OUT_OF_CORE
+	}
+	private TrainingMode mTrainingMode = TrainingMode.DEPTH_FIRST;
+	// Scores the candidate splits of a node
+	private SplitCriterion mCriterion = new EntropyCriterion();
+
+	/**
+	 * How the tree is pruned after it's grown
+	 */
+	public enum PruningMode {
+		// Greedy reduced-error pruning against a tuning set of every 
+		// TUNE_SET_SPACING-th row, which is held out of training
+		REDUCED_ERROR,
+		// C4.5's pessimistic error pruning, from the training counts. Every
+		// row is trained on
+		PESSIMISTIC,
+		// CART's cost-complexity pruning at the complexity penalty, from the
+		// training counts. Every row is trained on
+		COST_COMPLEXITY
+	}
+	private PruningMode mPruningMode = PruningMode.REDUCED_ERROR;
+	// The training errors a subtree must save per leaf it adds to survive
+	// cost-complexity pruning
+	public static final double DEFAULT_COMPLEXITY_PENALTY = 1;
+	private double mComplexityPenalty = DEFAULT_COMPLEXITY_PENALTY;
+	// The penalties along the last cost-complexity pruning path
+	private double[] mPruningPath;
+	
+	// The most memory, in bytes, that out-of-core training buffers columns in
+	public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+	private long mMemoryBudget = DEFAULT_MEMORY_BUDGET;
+
+	/**
+	 * How a large node spreads the work of evaluating its splits across 
+	 * threads
+	 */
+	public enum SplitStrategy {
+		// Each thread counts a share of the features
+		FEATURES,
+		// Each thread counts every feature over a shard of the rows, into 
+		// its own histogram, and the histograms are merged
+		ROWS,
+		// Picks FEATURES when there are at least as many features as 
+		// threads, and ROWS otherwise
+		AUTO
+	}
+	
+	// Nodes with at least this many training rows evaluate their features' 
+	// splits in parallel
+	public static final int DEFAULT_PARALLEL_SPLIT_THRESHOLD = 1 << 15;
+	private int mParallelSplitThreshold = DEFAULT_PARALLEL_SPLIT_THRESHOLD;
+	private SplitStrategy mSplitStrategy = SplitStrategy.AUTO;
+	// The fewest rows a thread counts when sharding a node's rows
+	private static final int MIN_SHARD_SIZE = 1 << 13;
+	// Subtrees with at least this many training rows are built as their own
+	// fork-join tasks
+	public static final int DEFAULT_PARALLEL_TREE_THRESHOLD = 1 << 12;
+	private int mParallelTreeThreshold = DEFAULT_PARALLEL_TREE_THRESHOLD;
+	// Tuning sets with at least this many rows are routed through the tree
+	// in shards, concurrently
+	public static final int DEFAULT_PARALLEL_TUNE_THRESHOLD = 1 << 15;
+	private int mParallelTuneThreshold = DEFAULT_PARALLEL_TUNE_THRESHOLD;
+	private ForkJoinPool mPool = ForkJoinPool.commonPool();
+	// Runs the folds of leave-one-out cross validation concurrently, or null
+	// to run them one after another
+	private ExecutorService mValidationExecutor;
 
 	// Specifies how many spaces to skip before adding next element to tune set
 	private int TUNE_SET_SPACING = 4; 
 	
+	// Gains are compared scaled up by the node's size, and scaled gains 
+	// closer than this many ulps of n*log2(n), for a node of size n, are 
+	// equal, as are scaled gains this small and no gain. Gains are only 
+	// computed to within rounding, and a gain of exactly zero, or an exact 
+	// tie, can come out a few ulps of the node's n*log2(n) either way
+	private static final double GAIN_TOLERANCE_ULPS = 4096;
+	
 	// The natural log of 2. 
 	// Pre-calculating this makes log2() a bit more efficient
 	private static final double NAT_LOG_2 = 0.69314718056d;
@@ -27,292 +145,1097 @@ class DecisionTree {
 	public DecisionTree(DataModel dataModel) {
 		mDataModel = dataModel;
 		mRootNode = null;
+		if(dataModel.isWeighted()) {
+			mWeights = new int[dataModel.getDataSize()];
+			for(int i = 0; i < mWeights.length; i++)
+				mWeights[i] = dataModel.getWeight(i);
+		}
+	}
+	
+	/**
+	 * Builds an untrained decision tree with the same data model and 
+	 * settings as another, for a fold of cross validation. The data model 
+	 * and, for depth-first training, the bitset index are shared, since 
+	 * training only reads them, while the weights are copied, since a fold 
+	 * changes them.
+	 * @param other Tree to copy
+	 */
+	private DecisionTree(DecisionTree other) {
+		mDataModel = other.mDataModel;
+		mRootNode = null;
+		if(other.mTrainingMode == TrainingMode.DEPTH_FIRST)
+			mBitsetIndex = other.getBitsetIndex();
+		if(other.mWeights != null)
+			mWeights = other.mWeights.clone();
+		mTrainingMode = other.mTrainingMode;
+		mCriterion = other.mCriterion;
+		mPruningMode = other.mPruningMode;
+		mComplexityPenalty = other.mComplexityPenalty;
+		mMemoryBudget = other.mMemoryBudget;
+		mParallelSplitThreshold = other.mParallelSplitThreshold;
+		mSplitStrategy = other.mSplitStrategy;
+		mParallelTreeThreshold = other.mParallelTreeThreshold;
+		mParallelTuneThreshold = other.mParallelTuneThreshold;
+		mPool = other.mPool;
+	}
+	
+	/**
+	 * Sets the number of training rows at or above which a node evaluates its
+	 * features' splits in parallel. Smaller nodes evaluate them one after 
+	 * another, since forking costs more than it saves on them.
+	 * @param threshold The row threshold. Integer.MAX_VALUE disables parallel
+	 *        split evaluation
+	 */
+	public void setParallelSplitThreshold(int threshold) {
+		mParallelSplitThreshold = threshold;
+	}
+
+	/**
+	 * Sets the order in which the tree is grown. Every mode grows the same 
+	 * tree. Level-wise training scans the columns sequentially once per 
+	 * depth, rather than once per node, but keeps the histograms of a whole
+	 * level in memory at once. Out-of-core training additionally needs a 
+	 * data model loaded with DataModelFile.load().
+	 * @param mode The training mode. Defaults to DEPTH_FIRST
+	 */
+	public void setTrainingMode(TrainingMode mode) {
+		mTrainingMode = mode;
+	}
+
+	/**
+	 * Sets how the tree is pruned. Pessimistic and cost-complexity pruning
+	 * need no tuning set, so they train on every row, and take time linear
+	 * in the size of the tree.
+	 * @param mode The pruning mode. Defaults to REDUCED_ERROR
+	 */
+	public void setPruningMode(PruningMode mode) {
+		mPruningMode = mode;
+	}
+
+	/**
+	 * Sets the complexity penalty for cost-complexity pruning. A subtree is
+	 * kept only if it saves more training errors per leaf it adds than the
+	 * penalty, with rows counted by weight.
+	 * @param penalty The complexity penalty. Defaults to 
+	 *        DEFAULT_COMPLEXITY_PENALTY
+	 */
+	public void setComplexityPenalty(double penalty) {
+		if(penalty < 0)
+			throw new IllegalArgumentException(
+					"The complexity penalty must not be negative");
+		mComplexityPenalty = penalty;
+	}
+
+	/**
+	 * Returns the penalties at the steps of the last cost-complexity pruning
+	 * path, in nondecreasing order. Each step prunes the tree's weakest link,
+	 * and the last prunes the root. Pruning at a penalty does the steps 
+	 * whose penalties are within it.
+	 * @return The penalties, or null if the tree wasn't cost-complexity 
+	 *         pruned
+	 */
+	public double[] getPruningPath() {
+		return mPruningPath;
+	}
+
+	/**
+	 * Sets the criterion which scores the candidate splits of a node. The 
+	 * node splits on the feature with the highest score, and becomes a leaf
+	 * if no score is above zero.
+	 * @param criterion The split criterion. Defaults to information gain
+	 */
+	public void setSplitCriterion(SplitCriterion criterion) {
+		mCriterion = criterion;
+	}
+
+	/**
+	 * Sets the most memory that out-of-core training buffers columns in. 
+	 * This bounds the blocks of rows streamed from the data model file, not
+	 * the assignment of rows to nodes or the histograms.
+	 * @param bytes The memory budget in bytes
+	 */
+	public void setMemoryBudget(long bytes) {
+		if(bytes <= 0)
+			throw new IllegalArgumentException("Memory budget must be "
+					+ "positive");
+		mMemoryBudget = bytes;
+	}
+
+	/**
+	 * Sets how large nodes spread the work of evaluating their splits across 
+	 * threads. Every strategy chooses the same splits.
+	 * @param strategy The strategy to use. Defaults to AUTO
+	 */
+	public void setSplitStrategy(SplitStrategy strategy) {
+		mSplitStrategy = strategy;
+	}
+
+	/**
+	 * Sets the number of training rows at or above which a subtree is built 
+	 * as its own fork-join task, concurrently with its siblings. Smaller 
+	 * subtrees are built by the thread that split their parent.
+	 * @param threshold The row threshold. Integer.MAX_VALUE disables parallel
+	 *        subtree construction
+	 */
+	public void setParallelTreeThreshold(int threshold) {
+		mParallelTreeThreshold = threshold;
+	}
+
+	/**
+	 * Sets the number of tuning rows at or above which pruning routes the 
+	 * tuning set through the tree in shards, concurrently. The tree is 
+	 * pruned the same either way.
+	 * @param threshold The row threshold. Integer.MAX_VALUE disables parallel
+	 *        routing
+	 */
+	public void setParallelTuneThreshold(int threshold) {
+		mParallelTuneThreshold = threshold;
+	}
+
+	/**
+	 * Sets the pool on which parallel work runs. Defaults to the common pool
+	 * @param pool The fork-join pool to use
+	 */
+	public void setPool(ForkJoinPool pool) {
+		mPool = pool;
+	}
+
+	/**
+	 * Sets the executor that runs the folds of leave-one-out cross 
+	 * validation. Each fold trains its own tree, sharing only the data model,
+	 * so folds run concurrently, and the average accuracy is the same as 
+	 * running them one after another.
+	 * @param executor The executor, which the caller shuts down, or null to 
+	 *        run the folds one after another. Defaults to null
+	 */
+	public void setValidationExecutor(ExecutorService executor) {
+		mValidationExecutor = executor;
 	}
 	
 	/**
 	 * Executes leave-one-out cross validation, and returns the average accuracy
-	 * across all instances
+	 * across all instances. Each fold trains its own tree, so this tree is 
+	 * left as it was. A weighted data model's rows are left out one instance
+	 * at a time, by decrementing the row's weight, so each row is trained 
+	 * and tested once and its accuracy counted once per instance.
 	 */
 	public double doLOUCrossValidation() {
+		int dataSize = mDataModel.getDataSize();
+		double[] accuracies = runFolds();
 		
-		DataModel.Datum[] data = mDataModel.getData();
-		
+		// Add up the folds' accuracies in order, so the average comes out the
+		// same however the folds were run
 		double totalAccuracy = 0;
-		DataModel.Datum[] testTune = 
-				new DataModel.Datum[data.length-1];
+		long totalWeight = 0;
+		for(int i = 0; i < dataSize; i++) {
+			int weight = (mWeights == null) ? 1 : mWeights[i];
+			totalAccuracy += (mWeights == null) ? 
+					accuracies[i] : weight * accuracies[i];
+			totalWeight += weight;
+		}
+		// Return average accuracy
+		return totalAccuracy / totalWeight;
+	}
+	
+	/**
+	 * Runs every fold of leave-one-out cross validation, on the validation 
+	 * executor if there is one
+	 * @return The accuracy of each fold's tree on the row it left out
+	 */
+	private double[] runFolds() {
+		int dataSize = mDataModel.getDataSize();
+		double[] accuracies = new double[dataSize];
+		if(mValidationExecutor == null) {
+			// One tree is retrained for every fold
+			DecisionTree fold = new DecisionTree(this);
+			for(int i = 0; i < dataSize; i++)
+				accuracies[i] = fold.testLeftOut(i);
+			return accuracies;
+		}
 		
-		// Loop through all data elements, we leave one out each time
-		for(int i = 0; i < data.length; i++) {
-			// Inefficient, but easy. Copy over all elements except the ith, 
-			// which will constitute our testing set
-			for(int j = 0; j < data.length; j++) {
-				if(j < i) {
-					testTune[j] = data[j];
-				} else if (j > i) {
-					// ith element is not copied over, so offset index down one
-					testTune[j-1] = data[j];
-				}
+		List<Future<Double>> folds = new ArrayList<Future<Double>>();
+		try {
+			for(int i = 0; i < dataSize; i++) {
+				final int row = i;
+				folds.add(mValidationExecutor.submit(new Callable<Double>() {
+					@Override
+					public Double call() {
+						return new DecisionTree(DecisionTree.this)
+								.testLeftOut(row);
+					}
+				}));
 			}
-			// Train and tune with the left-one-out data set
-			trainAndTune(testTune);
-			// Test with the element left out, and increment total accuracy
-			totalAccuracy += 
-					findTreeAccuracy(new DataModel.Datum[] {data[i]});
+			for(int i = 0; i < dataSize; i++)
+				accuracies[i] = awaitFold(folds.get(i));
+		} finally {
+			// Stop any folds still pending if one failed
+			for(Future<Double> fold : folds)
+				fold.cancel(false);
 		}
-		// Return average accuracy
-		return totalAccuracy / data.length;
+		return accuracies;
+	}
+	
+	/**
+	 * Waits for a fold of cross validation to finish, rethrowing anything it
+	 * threw
+	 * @param fold The fold's pending accuracy
+	 * @return The fold's accuracy
+	 */
+	private static double awaitFold(Future<Double> fold) {
+		try {
+			return fold.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted during cross validation", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+	
+	/**
+	 * Trains and tunes this tree with one instance of the specified row left
+	 * out, and tests it on that row. The row itself is only left out if it 
+	 * stands for a single instance.
+	 * @param row The row to leave out
+	 * @return The tree's accuracy on the row
+	 */
+	private double testLeftOut(int row) {
+		int dataSize = mDataModel.getDataSize();
+		int[] testTune = new int[dataSize];
+		int numRows = 0;
+		if(mWeights == null) {
+			for(int j = 0; j < dataSize; j++) {
+				if(j != row)
+					testTune[numRows++] = j;
+			}
+			trainAndTune(Arrays.copyOf(testTune, numRows));
+		} else {
+			int weight = mWeights[row];
+			mWeights[row]--;
+			for(int j = 0; j < dataSize; j++) {
+				if(mWeights[j] > 0)
+					testTune[numRows++] = j;
+			}
+			trainAndTune(Arrays.copyOf(testTune, numRows));
+			mWeights[row] = weight;
+		}
+		// Test with the element left out
+		return findTreeAccuracy(new int[] {row});
+	}
+	
+	/**
+	 * Returns the bitset index over the data model, building it the first 
+	 * time. Only depth-first training uses it, so other training modes never
+	 * read the columns into it.
+	 * @return The bitset index, or null if the data model isn't suitable
+	 */
+	private synchronized BitsetIndex getBitsetIndex() {
+		if(mBitsetIndex == null && BitsetIndex.isSuitable(mDataModel))
+			mBitsetIndex = new BitsetIndex(mDataModel);
+		return mBitsetIndex;
 	}
 	
 	/**
 	 * Trains and tunes decision tree on entire data set
 	 */
 	public void trainAndTune() {
-		trainAndTune(mDataModel.getData());
+		int[] rows = new int[mDataModel.getDataSize()];
+		for(int i = 0; i < rows.length; i++)
+			rows[i] = i;
+		trainAndTune(rows);
 	}
 	
 	/**
 	 * Trains and tunes decision tree on the specified data set
-	 * @param data Data on which to train and tune
+	 * @param rows Rows of the data model on which to train and tune
 	 */
-	private void trainAndTune(DataModel.Datum[] data) {
-		// Split data into training and tuning sets
-		DataModel.Datum[][] trainTune = buildTrainTuneSets(data);
+	private void trainAndTune(int[] rows) {
+		// Split data into training and tuning sets, unless pruning needs no
+		// tuning set. The training rows are a fresh array, which training 
+		// will permute
+		int[][] trainTune;
+		if(mPruningMode == PruningMode.REDUCED_ERROR) {
+			trainTune = buildTrainTuneSets(rows);
+		} else {
+			trainTune = new int[][] { rows.clone(), new int[0] };
+			mTrainWeights = mWeights;
+			mTuneWeights = null;
+		}
+		mRows = trainTune[0];
 
 		// Initialize root with the training data and start training
-		mRootNode = new DTreeNode(trainTune[0], 
-								mDataModel.getLabels(), 
-								calculateEntropy(trainTune[0]));
-		trainTreeHelper(mRootNode);
+		int[] labelCounts = countLabels(mRows);
+		mRootNode = new DTreeNode(mDataModel, labelCounts);
+		if(mTrainingMode == TrainingMode.LEVEL_WISE) {
+			trainLevelWise(mRootNode);
+		} else if(mTrainingMode == TrainingMode.OUT_OF_CORE) {
+			trainOutOfCore(mRootNode);
+		} else {
+			mBitsetIndex = getBitsetIndex();
+			SubtreeTask rootTask = 
+					new SubtreeTask(mRootNode, 0, mRows.length, null);
+			if(mRows.length >= mParallelTreeThreshold)
+				runTask(rootTask);
+			else
+				rootTask.compute();
+		}
 
+		// Prune the induced tree
+		mPruningPath = null;
+		if(mPruningMode == PruningMode.PESSIMISTIC) {
+			TrainingPruner.prunePessimistic(mRootNode);
+		} else if(mPruningMode == PruningMode.COST_COMPLEXITY) {
+			mPruningPath = TrainingPruner.pruneCostComplexity(mRootNode, 
+					mComplexityPenalty);
+		} else {
+			tuneTree(trainTune[1]);
+		}
+	}
+	
+	/**
+	 * Does reduced-error pruning on the tree. This a greedy approach. The 
+	 * tuning set is routed through the tree once, and each prune's effect on
+	 * accuracy is found from the counts left at the nodes.
+	 * @param tuningData Rows of the data model to tune on
+	 */
+	private void tuneTree(int[] tuningData) {
+		int shardSize = tuningData.length;
+		if(tuningData.length >= mParallelTuneThreshold) {
+			shardSize = Math.max(MIN_SHARD_SIZE, 
+					(tuningData.length - 1) / mPool.getParallelism() + 1);
+		}
+		TuningCounts counts = new TuningCounts(mRootNode, mDataModel, 
+				mTuneWeights, tuningData, mPool, shardSize);
 		// Find the unpruned accuracy
-		mTreeAccuracy = findTreeAccuracy(trainTune[1]);
-
-		// Tune the induced tree
-		tuneTree(trainTune[1]);
-	}
-	
-	/**
-	 * Does reduced-error pruning on the tree. This a greedy approach.
-	 * @param root 
-	 * @param tuningData
-	 */
-	private void tuneTree(DataModel.Datum[] tuningData) {
-		boolean morePruning = true;
-		// Loop until any more pruning reduce the accuracy of the tree
-		while(morePruning) {
-			// The best prune will move up the recursive stack. If the best 
-			// prune increases accuracy, do the prune. Otherwise end pruning.
-			TuneWrapper bestPrune = tuneTreeHelper(mRootNode, tuningData);
-			if(bestPrune.bestAccuracy > mTreeAccuracy) {
-				DTreeNode pruneNode = bestPrune.bestNodeToPrune;
-				pruneNode.setUniform(pruneNode.getMajorityLabel());
-				mTreeAccuracy = bestPrune.bestAccuracy;
-			} else {
-				morePruning = false;
-			}
+		mTreeAccuracy = counts.getAccuracy();
+		
+		// Loop until any more pruning reduce the accuracy of the tree. Each 
+		// round does the prune which most increases accuracy
+		int pruneNode = counts.findBestPrune();
+		while(pruneNode != DTreeNode.NONE) {
+			counts.prune(pruneNode);
+			mTreeAccuracy = counts.getAccuracy();
+			pruneNode = counts.findBestPrune();
 		}
 	}
 	
 	/**
-	 * Recursive helper method for doing reduced-error pruning
+	 * Recursive helper method for training the tree
 	 * @param root Current root node
-	 * @param tuningData The data to tune on
-	 * @return The best node to prune from the root's subtree, including 
-	 *         the root 
-	 */
-	private TuneWrapper tuneTreeHelper(DTreeNode root, 
-									DataModel.Datum[] tuningData) 
-	{	
-		DTreeNode bestNode = root;
-		double bestAccuracy;
-		// Try pruning this node and calculate new accuracy. Keep track of
-		// the old uniform value, and reset to it after accuracy check so that
-		// this node will not be considered a leaf upon recursion.
-		Character oldUniformVal = root.getUniformVal();
-		root.setUniform(root.getMajorityLabel());
-		bestAccuracy = findTreeAccuracy(tuningData);
-		root.setUniform(oldUniformVal);
-
-		// Recurse to children
-		for(DTreeNode child : root.getChildren()) {
-			TuneWrapper result = tuneTreeHelper(child, tuningData);
-			// If any child branch returns a better accuracy, pass it on. 
-			if(bestAccuracy < result.bestAccuracy) {
-				bestNode = result.bestNodeToPrune;
-				bestAccuracy = result.bestAccuracy;
-			}
-		}
-		return new TuneWrapper(bestNode, bestAccuracy);
+	 * @param start First index of the root's range of training rows
+	 * @param end One past the last index of the root's range of training rows
+	 */
+	public void trainTreeHelper(DTreeNode root, int start, int end) {
+		trainTreeHelper(root, start, end, null);
 	}
 	
 	/**
 	 * Recursive helper method for training the tree
 	 * @param root Current root node
+	 * @param start First index of the root's range of training rows
+	 * @param end One past the last index of the root's range of training rows
+	 * @param histogram The histogram of the root's training data if it's 
+	 *        already known, or null to count it from the data
 	 */
-	public void trainTreeHelper(DTreeNode root) {
-		
+	private void trainTreeHelper(DTreeNode root, int start, int end, 
+			Histogram histogram) 
+	{
 		// End recursion when we've reached a uniformly labeled node
 		if(root.isUniform())
 			return;
 
-		// Keep track of best gain seen so far
-		double bestGain = -1;
-		int bestFeature = -1;
-		DataModel.Datum[][] bestSplit = null;
+		// Count every feature's split in a pass over the node's data, unless
+		// the counts were derived from the parent's, and score the splits
+		if(histogram == null)
+			histogram = buildHistogram(start, end);
+		int numFeatures = mDataModel.getNumFeatures();
+		double[] gains = new double[numFeatures];
+		for(int i = 0; i < numFeatures; i++)
+			gains[i] = findGain(root, histogram, i);
+		
+		int bestFeature = chooseSplit(root, gains);
+		if(bestFeature == DTreeNode.NONE)
+			return;
+		
+		// Only the winning feature actually rearranges the data. Weighted 
+		// histogram counts aren't row counts, so the rows are counted anew
+		int numFeatureVals = mDataModel.getNumFeatureValues();
+		int[] bestTotalCounts;
+		if(mTrainWeights != null) {
+			bestTotalCounts = countRows(start, end, bestFeature);
+		} else {
+			bestTotalCounts = new int[numFeatureVals];
+			for(int i = 0; i < numFeatureVals; i++)
+				bestTotalCounts[i] = histogram.getValueCount(bestFeature, i);
+		}
+		partitionOnFeature(start, bestFeature, bestTotalCounts);
+		
+		// Build and set children nodes, only for values in the feature's 
+		// domain which some of the root's data take. Empty partitions get 
+		// no node
+		DTreeNode[] children = new DTreeNode[numFeatureVals];
+		int largest = DTreeNode.NONE;
+		for(int i : mDataModel.getFeatureDomain(bestFeature)) {
+			if(bestTotalCounts[i] == 0)
+				continue;
+			children[i] = addChild(root, histogram, bestFeature, i);
+			if(largest == DTreeNode.NONE 
+					|| bestTotalCounts[i] > bestTotalCounts[largest])
+				largest = i;
+		}
+		
+		// Count the children's histograms, except for the largest child's. 
+		// Its histogram is the root's minus its siblings', which saves 
+		// scanning the biggest partition
+		boolean deriveLargest = !children[largest].isUniform();
+		Histogram[] childHistograms = new Histogram[numFeatureVals];
+		int childStart = start;
+		for(int i = 0; i < numFeatureVals; i++) {
+			int childEnd = childStart + bestTotalCounts[i];
+			if(i != largest && childEnd > childStart 
+					&& (deriveLargest || !children[i].isUniform())) 
+			{
+				childHistograms[i] = buildHistogram(childStart, childEnd);
+				if(deriveLargest)
+					histogram.subtract(childHistograms[i]);
+			}
+			childStart = childEnd;
+		}
+		if(deriveLargest)
+			childHistograms[largest] = histogram;
+		
+		// Recurse. Each child owns its own range of rows, so large subtrees 
+		// can be built concurrently
+		List<SubtreeTask> forked = new ArrayList<SubtreeTask>();
+		childStart = start;
+		for(int i = 0; i < numFeatureVals; i++) {
+			if(children[i] == null)
+				continue;
+			int childEnd = childStart + bestTotalCounts[i];
+			SubtreeTask task = new SubtreeTask(children[i], childStart, 
+					childEnd, childHistograms[i]);
+			childHistograms[i] = null;
+			trainSubtree(task, childEnd - childStart, forked);
+			childStart = childEnd;
+		}
+		joinAll(forked);
+	}
+	
+	/**
+	 * Counts the histogram of a range of the row permutation, with the bitset
+	 * index if the range's rows are dense, and otherwise fanning out across 
+	 * features or rows when the range is large
+	 * @param start First index of the range
+	 * @param end One past the last index of the range
+	 * @return The filled histogram
+	 */
+	private Histogram buildHistogram(int start, int end) {
+		// Dense ranges are counted fastest with the bitset index
+		if(mBitsetIndex != null) {
+			Histogram histogram = newHistogram();
+			if(mBitsetIndex.fillHistogram(mRows, start, end, histogram))
+				return histogram;
+		}
 		
-		int rootDataLength = root.getData().length;
 		int numFeatures = mDataModel.getNumFeatures();
-		// Split on every issue, see which will maximize the gain
-		for(int i = 0; i < numFeatures; i++) {
-			DataModel.Datum[][] split = splitDataOnFeature(root.getData(), i);
-			double currentEntropy = 0;
-			for(int j = 0; j < split.length; j++) {
-				// Add weighted entropy of this subset to running total
-				currentEntropy += ((double)split[j].length / rootDataLength) 
-						* calculateEntropy(split[j]);
+		SplitStrategy strategy = (end - start >= mParallelSplitThreshold) ? 
+				pickSplitStrategy(numFeatures) : null;
+		if(strategy == SplitStrategy.ROWS) {
+			int shardSize = Math.max(MIN_SHARD_SIZE, 
+					(end - start - 1) / mPool.getParallelism() + 1);
+			return runTask(new HistogramTask(start, end, shardSize));
+		}
+		
+		Histogram histogram = newHistogram();
+		if(strategy == SplitStrategy.FEATURES)
+			runTask(new FeatureCountTask(start, end, histogram, 0, numFeatures));
+		else
+			fillFeatures(start, end, histogram, 0, numFeatures);
+		return histogram;
+	}
+	
+	/**
+	 * Trains the tree one depth at a time. Each training row is tagged with
+	 * the open node it belongs to at the current depth, the histograms of 
+	 * every open node are filled in one pass over the columns, and then 
+	 * every open node is split and its rows moved down to its children. 
+	 * Rows which reach a leaf are dropped from later passes.
+	 * @param root Root node, holding all of the training rows
+	 */
+	private void trainLevelWise(DTreeNode root) {
+		if(root.isUniform())
+			return;
+		
+		// The index of each training row's node among the open nodes. The
+		// rows are mRows[0, numRows)
+		int numRows = mRows.length;
+		int[] nodeIds = new int[numRows];
+		List<DTreeNode> open = new ArrayList<DTreeNode>();
+		open.add(root);
+		
+		while(!open.isEmpty()) {
+			// Count the whole level in one pass
+			Histogram[] histograms = new Histogram[open.size()];
+			for(int n = 0; n < histograms.length; n++)
+				histograms[n] = newHistogram();
+			fillLevelHistograms(numRows, nodeIds, histograms);
+			
+			// Split every open node
+			int[] splitOn = new int[open.size()];
+			int[][] childIds = new int[open.size()][];
+			List<DTreeNode> nextOpen = 
+					splitLevel(open, histograms, splitOn, childIds);
+			
+			// Move each row down to its node's child, keeping only the rows
+			// which are still at open nodes
+			int liveRows = 0;
+			for(int i = 0; i < numRows; i++) {
+				int n = nodeIds[i];
+				if(splitOn[n] == DTreeNode.NONE)
+					continue;
+				int row = mRows[i];
+				int childId = childIds[n][
+						mDataModel.getFeatureCode(row, splitOn[n])];
+				if(childId != DTreeNode.NONE) {
+					mRows[liveRows] = row;
+					nodeIds[liveRows++] = childId;
+				}
 			}
-			// Subtract the post-split weighted entropy from this node's 
-			// entropy to calculate gain
-			double curGain = root.getEntropy() - currentEntropy;
+			numRows = liveRows;
+			open = nextOpen;
+		}
+	}
+	
+	/**
+	 * Trains the tree one depth at a time like trainLevelWise(), but streams
+	 * the columns from the data model file in blocks of rows instead of 
+	 * reading them from memory. Besides the histograms of the open nodes, 
+	 * only the assignment of rows to nodes and one block of the columns are
+	 * held in memory. Each pass over the file both moves rows down to the 
+	 * children of the previous depth's splits and counts the new depth.
+	 * @param root Root node, holding all of the training rows
+	 */
+	private void trainOutOfCore(DTreeNode root) {
+		ColumnFile columnFile = mDataModel.getColumnFile();
+		if(columnFile == null)
+			throw new IllegalStateException("Out-of-core training needs a "
+					+ "data model loaded from a data model file");
+		if(root.isUniform())
+			return;
+		
+		int dataSize = mDataModel.getDataSize();
+		int blockSize = (int) Math.max(1, Math.min(dataSize, 
+				mMemoryBudget / columnFile.getBytesPerRow()));
+		// The index of each row's node among the open nodes, or NONE if the
+		// row isn't being trained on or has reached a leaf
+		int[] nodeIds = new int[dataSize];
+		Arrays.fill(nodeIds, DTreeNode.NONE);
+		for(int row : mRows)
+			nodeIds[row] = 0;
+		List<DTreeNode> open = new ArrayList<DTreeNode>();
+		open.add(root);
+		// The previous depth's splits, which rows haven't been moved by yet
+		int[] splitOn = null;
+		int[][] childIds = null;
+		
+		try(ColumnFile.Reader reader = columnFile.openReader(blockSize)) {
+			while(!open.isEmpty()) {
+				Histogram[] histograms = new Histogram[open.size()];
+				for(int n = 0; n < histograms.length; n++)
+					histograms[n] = newHistogram();
+				for(int firstRow = 0; firstRow < dataSize; 
+						firstRow += blockSize) 
+				{
+					streamBlock(reader, firstRow, nodeIds, splitOn, childIds, 
+							histograms);
+				}
+				
+				splitOn = new int[open.size()];
+				childIds = new int[open.size()][];
+				open = splitLevel(open, histograms, splitOn, childIds);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't stream data model file " 
+					+ columnFile.getFilePath() + ": " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Reads a block of rows from the data model file, moves its rows down to
+	 * the children of the previous depth's splits, and adds them to the 
+	 * histograms of the open nodes they land in
+	 * @param reader Reader over the data model file's columns
+	 * @param firstRow The block's first row
+	 * @param nodeIds The index of each row's node among the previous depth's
+	 *        open nodes, or NONE. Updated to the current depth's
+	 * @param splitOn The feature each of the previous depth's open nodes 
+	 *        split on, or NONE. Null at the root's depth
+	 * @param childIds The index among the current depth's open nodes of each
+	 *        child of the previous depth's open nodes, or NONE
+	 * @param histograms Histograms of the current depth's open nodes
+	 * @throws IOException If the file can't be read
+	 */
+	private void streamBlock(ColumnFile.Reader reader, int firstRow, 
+			int[] nodeIds, int[] splitOn, int[][] childIds, 
+			Histogram[] histograms) throws IOException
+	{
+		int numRows = reader.readBlock(firstRow);
+		int numFeatures = mDataModel.getNumFeatures();
+		byte[] labels = reader.getLabels();
+		byte[][] features = new byte[numFeatures][];
+		for(int f = 0; f < numFeatures; f++)
+			features[f] = reader.getFeatures(f);
+		
+		for(int i = 0; i < numRows; i++) {
+			int row = firstRow + i;
+			int n = nodeIds[row];
+			if(n == DTreeNode.NONE)
+				continue;
+			if(splitOn != null) {
+				n = (splitOn[n] == DTreeNode.NONE) ? DTreeNode.NONE 
+						: childIds[n][features[splitOn[n]][i] & 0xFF];
+				nodeIds[row] = n;
+				if(n == DTreeNode.NONE)
+					continue;
+			}
+			
+			int[][][] counts = histograms[n].getCounts();
+			int label = labels[i] & 0xFF;
+			int weight = (mTrainWeights == null) ? 1 : mTrainWeights[row];
+			for(int f = 0; f < numFeatures; f++)
+				counts[f][features[f][i] & 0xFF][label] += weight;
+		}
+	}
+	
+	/**
+	 * Splits every open node at a depth, and numbers the children which are 
+	 * still open, in order
+	 * @param open The open nodes at the depth
+	 * @param histograms The histogram of each open node. Released as the 
+	 *        nodes are split
+	 * @param splitOn Receives the feature each open node splits on, or NONE
+	 *        if it became a leaf
+	 * @param childIds Receives the index of each open node's children among
+	 *        the next depth's open nodes, or NONE for children which are 
+	 *        leaves or which weren't built because no data reach them
+	 * @return The open nodes of the next depth
+	 */
+	private List<DTreeNode> splitLevel(List<DTreeNode> open, 
+			Histogram[] histograms, int[] splitOn, int[][] childIds) 
+	{
+		int numFeatureVals = mDataModel.getNumFeatureValues();
+		double[] gains = new double[mDataModel.getNumFeatures()];
+		List<DTreeNode> nextOpen = new ArrayList<DTreeNode>();
+		for(int n = 0; n < open.size(); n++) {
+			DTreeNode node = open.get(n);
+			Histogram histogram = histograms[n];
+			histograms[n] = null;
+			for(int i = 0; i < gains.length; i++)
+				gains[i] = findGain(node, histogram, i);
+			splitOn[n] = chooseSplit(node, gains);
+			if(splitOn[n] == DTreeNode.NONE)
+				continue;
 			
+			childIds[n] = new int[numFeatureVals];
+			Arrays.fill(childIds[n], DTreeNode.NONE);
+			for(int i : mDataModel.getFeatureDomain(splitOn[n])) {
+				if(histogram.getValueCount(splitOn[n], i) == 0)
+					continue;
+				DTreeNode child = addChild(node, histogram, splitOn[n], i);
+				if(child.isUniform()) {
+					childIds[n][i] = DTreeNode.NONE;
+				} else {
+					childIds[n][i] = nextOpen.size();
+					nextOpen.add(child);
+				}
+			}
+		}
+		return nextOpen;
+	}
+	
+	/**
+	 * Fills the histograms of every open node at a depth, in one sequential 
+	 * pass over each column. Rows of a weighted data model count as many 
+	 * times as their weight.
+	 * @param numRows The number of rows still at open nodes, which are the 
+	 *        first rows of the row permutation
+	 * @param nodeIds The index of each row's node among the open nodes
+	 * @param histograms Empty histograms, one per open node
+	 */
+	private void fillLevelHistograms(int numRows, int[] nodeIds, 
+			Histogram[] histograms) 
+	{
+		int[][][][] counts = new int[histograms.length][][][];
+		for(int n = 0; n < histograms.length; n++)
+			counts[n] = histograms[n].getCounts();
+		ByteBuffer labels = mDataModel.getLabelColumn();
+		for(int f = 0; f < mDataModel.getNumFeatures(); f++) {
+			ByteBuffer column = mDataModel.getFeatureColumn(f);
+			for(int i = 0; i < numRows; i++) {
+				int row = mRows[i];
+				int weight = (mTrainWeights == null) ? 1 : mTrainWeights[row];
+				counts[nodeIds[i]][f][column.get(row) & 0xFF]
+						[labels.get(row) & 0xFF] += weight;
+			}
+		}
+	}
+	
+	/**
+	 * Builds a subtree, forking it off as its own task if it's large enough
+	 * and we're running in a fork-join pool, or building it on this thread 
+	 * otherwise. Only the subtree's own nodes and rows are touched, so 
+	 * siblings can be built concurrently and the tree comes out the same.
+	 * @param task Task building the subtree
+	 * @param size Number of training rows in the subtree
+	 * @param forked Receives the task if it was forked
+	 */
+	private void trainSubtree(SubtreeTask task, int size, 
+			List<SubtreeTask> forked) 
+	{
+		if(size >= mParallelTreeThreshold && ForkJoinTask.inForkJoinPool()) {
+			task.fork();
+			forked.add(task);
+		} else {
+			task.compute();
+		}
+	}
+	
+	/**
+	 * Waits for forked subtrees to be built
+	 * @param forked Forked subtree tasks
+	 */
+	private static void joinAll(List<SubtreeTask> forked) {
+		for(SubtreeTask task : forked)
+			task.join();
+	}
+	
+	/**
+	 * Resolves the split strategy for a node large enough to evaluate its
+	 * splits in parallel
+	 * @param numFeatures The number of features
+	 * @return FEATURES or ROWS
+	 */
+	private SplitStrategy pickSplitStrategy(int numFeatures) {
+		if(mSplitStrategy != SplitStrategy.AUTO)
+			return mSplitStrategy;
+		return (numFeatures >= mPool.getParallelism()) ? 
+				SplitStrategy.FEATURES : SplitStrategy.ROWS;
+	}
+	
+	/**
+	 * Runs a task to completion in the pool. Tasks started from within a 
+	 * fork-join pool run in that pool, so workers help rather than block.
+	 * @param task Task to run
+	 * @return The task's result
+	 */
+	private <T> T runTask(ForkJoinTask<T> task) {
+		if(ForkJoinTask.inForkJoinPool())
+			return task.invoke();
+		else
+			return mPool.invoke(task);
+	}
+	
+	/**
+	 * Chooses the feature on which to split the root, which is the feature 
+	 * that maximizes the gain. Ties, within a tolerance for rounding that 
+	 * grows with the root's size, go to the lowest feature index. If no 
+	 * feature leads to a gain, the root is made a leaf instead.
+	 * @param root Node to split
+	 * @param gains The gain of splitting the root on each feature
+	 * @return The index of the feature the root splits on, or NONE if the 
+	 *         root became a leaf
+	 */
+	private int chooseSplit(DTreeNode root, double[] gains) {
+		// Compare gains scaled by the root's size, where rounding errors are 
+		// about the size of the ulps of n*log2(n)
+		int size = root.getSize();
+		double tolerance = GAIN_TOLERANCE_ULPS 
+				* Math.ulp(size * Math.max(1, log2(size)));
+		
+		// Keep track of best gain seen so far
+		double bestGain = Double.NEGATIVE_INFINITY;
+		int bestFeature = -1;
+		
+		// See which feature's split maximizes the gain
+		for(int i = 0; i < gains.length; i++) {
 			// If this gain is better, update best-so-far
-			if(curGain > bestGain) {
-				bestGain = curGain;
+			double gain = gains[i] * size;
+			if(gain > bestGain + tolerance) {
+				bestGain = gain;
 				bestFeature = i;
-				bestSplit = split;
 			}
 		}
 		
 		// If no feature splits lead to a gain, then make this node a leaf with 
 		// the majority label as its uniform value
-		if(bestGain == 0) {
+		if(bestGain <= tolerance) {
 			root.setUniform(root.getMajorityLabel());
-			return;
+			return DTreeNode.NONE;
 		}
 		
 		// Set this node's feature index
 		root.setSplitOn(bestFeature);
-		
-		// Build and set children nodes
-		for(int i = 0; i < bestSplit.length; i++) {
-			DTreeNode curNode = new DTreeNode(bestSplit[i], 
-											mDataModel.getFeatureValue(i), 
-											root, 
-											mDataModel.getLabels(), 
-											calculateEntropy(bestSplit[i]));
-			root.addChild(curNode);
-			
-			// Recurse
-			trainTreeHelper(curNode);
-		}
+		return bestFeature;
 	}
 	
 	/**
-	 * Separates the specified data into train and tune sets
-	 * @param data Data to separate
-	 * @return Two lists, first of which is training data, second of which is 
-	 *         tuning data
+	 * Calculates the gain of splitting the root on the specified feature, as
+	 * scored by the split criterion
+	 * @param root Node to split
+	 * @param histogram The histogram of the root's training data, filled at 
+	 *        least for the feature
+	 * @param feature The feature's index
+	 * @return
 	 */
-	private DataModel.Datum[][] buildTrainTuneSets(DataModel.Datum[] data) {
-		DataModel.Datum[][] trainTune = new DataModel.Datum[2][];
-		
-		// Initialize train and tune sets
-		int tuneLength = data.length / TUNE_SET_SPACING;
-		if(data.length % TUNE_SET_SPACING != 0) tuneLength++;
-		DataModel.Datum[] tuneSet = new DataModel.Datum[tuneLength];
-		DataModel.Datum[] trainSet = 
-				new DataModel.Datum[data.length - tuneSet.length];
-
+	private double findGain(DTreeNode root, Histogram histogram, int feature) {
+		return mCriterion.score(root.getLabelCounts(), 
+				histogram.getFeatureCounts(feature));
+	}
+	
+	/**
+	 * Fills the histogram for a range of features
+	 * @param start First index of the range of the row permutation to count
+	 * @param end One past the last index of the range to count
+	 * @param histogram An empty histogram
+	 * @param fromFeature First feature of the range
+	 * @param toFeature One past the last feature of the range
+	 */
+	private void fillFeatures(int start, int end, Histogram histogram, 
+			int fromFeature, int toFeature) 
+	{
+		for(int f = fromFeature; f < toFeature; f++)
+			fillFeatureCounts(start, end, f, histogram.getFeatureCounts(f));
+	}
+	
+	/**
+	 * Builds the child of the root for the specified feature value, and adds
+	 * it to the root
+	 * @param root Parent node
+	 * @param histogram The filled histogram of the root's training data
+	 * @param feature The feature on which the root splits
+	 * @param featureVal The code of the feature value the child represents
+	 * @return The new child
+	 */
+	private DTreeNode addChild(DTreeNode root, Histogram histogram, 
+							int feature, int featureVal) 
+	{
+		int[] labelCounts = histogram.getFeatureCounts(feature)[featureVal]
+				.clone();
+		DTreeNode child = new DTreeNode(mDataModel, 
+										labelCounts, 
+										featureVal, 
+										root);
+		root.addChild(child);
+		return child;
+	}
+	
+	/**
+	 * Builds an empty histogram sized for the data model
+	 * @return
+	 */
+	private Histogram newHistogram() {
+		return new Histogram(mDataModel.getNumFeatures(), 
+				mDataModel.getNumFeatureValues(), 
+				mDataModel.getLabels().length);
+	}
+	
+	/**
+	 * Separates the specified data into train and tune sets. Every 
+	 * TUNE_SET_SPACING-th instance is held out for tuning. The instances a 
+	 * weighted row stands for are numbered consecutively, and its weight is
+	 * split between the sets by how many of them fall on tuning positions, 
+	 * so the sets keep the same ratio for every pattern. The split weights 
+	 * are kept in mTrainWeights and mTuneWeights.
+	 * @param data Rows of the data model to separate
+	 * @return Two lists of rows, first of which is training data, second of 
+	 *         which is tuning data
+	 */
+	private int[][] buildTrainTuneSets(int[] data) {
+		if(mWeights == null) {
+			mTrainWeights = null;
+			mTuneWeights = null;
+		} else {
+			mTrainWeights = new int[mWeights.length];
+			mTuneWeights = new int[mWeights.length];
+		}
+		int[] trainSet = new int[data.length];
+		int[] tuneSet = new int[data.length];
 		int tuneIndex = 0;
 		int trainIndex = 0;
 		
 		// Split into sets
-		for(int i = 0; i < data.length; i++) {
-			// Every TUNE_SET_SPACING spaces, we add to to tuning set
-			if(i % TUNE_SET_SPACING == 0)
-				tuneSet[tuneIndex++] = data[i];
-			else 
-				trainSet[trainIndex++] = data[i];
+		long instance = 0;
+		for(int row : data) {
+			int weight = (mWeights == null) ? 1 : mWeights[row];
+			// Every TUNE_SET_SPACING spaces, we add to to tuning set. Count
+			// the tuning positions among this row's instances
+			long end = instance + weight;
+			int tuneWeight = (int) (ceilDiv(end, TUNE_SET_SPACING) 
+					- ceilDiv(instance, TUNE_SET_SPACING));
+			instance = end;
+			if(tuneWeight > 0)
+				tuneSet[tuneIndex++] = row;
+			if(tuneWeight < weight)
+				trainSet[trainIndex++] = row;
+			if(mWeights != null) {
+				mTrainWeights[row] = weight - tuneWeight;
+				mTuneWeights[row] = tuneWeight;
+			}
 		}
-		trainTune[0] = trainSet;
-		trainTune[1] = tuneSet;
-		return trainTune;
+		return new int[][] { Arrays.copyOf(trainSet, trainIndex), 
+				Arrays.copyOf(tuneSet, tuneIndex) };
+	}
+	
+	/**
+	 * Divides, rounding up
+	 * @param a A non-negative dividend
+	 * @param b A positive divisor
+	 * @return
+	 */
+	private static long ceilDiv(long a, long b) {
+		return (a + b - 1) / b;
 	}
 	
 	/**
-	 * Splits the data on the specified feature, returning lists of data for
-	 * each feature value
-	 * @param data Data to split
-	 * @param featureIndex Feature on which to split
-	 * @return An 2d array with all data split into separate lists based on
-	 *         their feature value at the specified feature index 
+	 * Fills one feature's part of a histogram with its feature value and 
+	 * label counts, for the data in the given range of the row permutation.
+	 * Rows of a weighted data model count as many times as their weight.
+	 * @param start First index of the range
+	 * @param end One past the last index of the range
+	 * @param featureIndex The feature to count
+	 * @param featureCounts The feature's empty counts, indexed by 
+	 *        [feature value][label]
 	 */
-	private DataModel.Datum[][] splitDataOnFeature(DataModel.Datum[] data,
-												int featureIndex) 
+	private void fillFeatureCounts(int start, int end, int featureIndex, 
+			int[][] featureCounts) 
 	{
-		int numFeatureVals = mDataModel.getNumFeatureValues();	
-
-		// Initialize all the split lists
-		ArrayList<ArrayList<DataModel.Datum>> splits = 
-				new ArrayList<ArrayList<DataModel.Datum>>();
-		for(int i = 0; i < numFeatureVals; i++)
-			splits.add(new ArrayList<DataModel.Datum>());
+		ByteBuffer labels = mDataModel.getLabelColumn();
+		ByteBuffer column = mDataModel.getFeatureColumn(featureIndex);
+		if(mTrainWeights != null) {
+			for(int i = start; i < end; i++) {
+				int row = mRows[i];
+				featureCounts[column.get(row) & 0xFF]
+						[labels.get(row) & 0xFF] += mTrainWeights[row];
+			}
+		} else {
+			for(int i = start; i < end; i++) {
+				int row = mRows[i];
+				featureCounts[column.get(row) & 0xFF][labels.get(row) & 0xFF]++;
+			}
+		}
+	}
+	
+	/**
+	 * Counts the rows with each value of the specified feature, in the given
+	 * range of the row permutation, regardless of their weights
+	 * @param start First index of the range
+	 * @param end One past the last index of the range
+	 * @param featureIndex Feature whose values to count
+	 * @return The number of rows with each feature value, indexed by code
+	 */
+	private int[] countRows(int start, int end, int featureIndex) {
+		int[] rowCounts = new int[mDataModel.getNumFeatureValues()];
+		ByteBuffer column = mDataModel.getFeatureColumn(featureIndex);
+		for(int i = start; i < end; i++)
+			rowCounts[column.get(mRows[i]) & 0xFF]++;
+		return rowCounts;
+	}
+	
+	/**
+	 * Partitions a range of the row permutation in place so that its data is
+	 * grouped by feature value on the specified feature, in feature value 
+	 * order. Each group ends up contiguous, quicksort-style, and no data is 
+	 * copied.
+	 * @param start First index of the range
+	 * @param featureIndex Feature on which to partition
+	 * @param totalCounts The row count per feature value within the range
+	 */
+	private void partitionOnFeature(int start, int featureIndex, 
+									int[] totalCounts) 
+	{
+		int numFeatureVals = totalCounts.length;
+		ByteBuffer column = mDataModel.getFeatureColumn(featureIndex);
+		// next[j] is the next unfilled slot of feature value j's group, and
+		// bound[j] is one past the end of that group
+		int[] next = new int[numFeatureVals];
+		int[] bound = new int[numFeatureVals];
+		int groupStart = start;
+		for(int j = 0; j < numFeatureVals; j++) {
+			next[j] = groupStart;
+			groupStart += totalCounts[j];
+			bound[j] = groupStart;
+		}
 		
-		// On the specified feature, split data into lists of each feature value
-		for(DataModel.Datum d : data) {
-			Character featureVal = d.getFeature(featureIndex);
-			// Add feature to the correct list
-			for(int i = 0; i < numFeatureVals; i++) {
-				if(mDataModel.getFeatureValue(i).equals(featureVal)) {
-					splits.get(i).add(d);
-					break;
+		// Swap each misplaced row into the group it belongs to, until every 
+		// group is filled
+		for(int j = 0; j < numFeatureVals; j++) {
+			while(next[j] < bound[j]) {
+				int row = mRows[next[j]];
+				int valIndex = column.get(row) & 0xFF;
+				if(valIndex == j) {
+					next[j]++;
+				} else {
+					mRows[next[j]] = mRows[next[valIndex]];
+					mRows[next[valIndex]++] = row;
 				}
-			}			
-		}
-
-		// Initialize the 2d array which will hold lists of data split by
-		// feature value on the feature specified
-		DataModel.Datum[][] splitLists = new DataModel.Datum[numFeatureVals][];
-				
-		// Copy to arrays and add to respective locations in container array
-		for(int i = 0; i < numFeatureVals; i++) {
-			ArrayList<DataModel.Datum> curList = splits.get(i);
-			DataModel.Datum[] curFeatureVal = 
-					new DataModel.Datum[curList.size()];
-			curList.toArray(curFeatureVal);
-			splitLists[i] = curFeatureVal;
+			}
 		}
-				
-		return splitLists;
 	}
 	
 	/**
 	 * Calculates the tree accuracy using the specified test data
-	 * @param testData Data to test with
+	 * @param testData Data of the tree's data model to test with
 	 * @return Percentage of test data that tree correctly labels
 	 */
 	public double findTreeAccuracy(DataModel.Datum[] testData) {
-		int totalAccurate = 0;
-		for(DataModel.Datum d : testData) {
+		int[] rows = new int[testData.length];
+		for(int i = 0; i < rows.length; i++)
+			rows[i] = testData[i].getRow();
+		return findTreeAccuracy(rows);
+	}
+
+	/**
+	 * Calculates the tree accuracy using the specified test data. Rows of a
+	 * weighted data model count as many times as their weight.
+	 * @param testData Rows of the data model to test with
+	 * @return Percentage of test data that tree correctly labels
+	 */
+	public double findTreeAccuracy(int[] testData) {
+		long totalAccurate = 0;
+		long totalWeight = 0;
+		for(int row : testData) {
 			DTreeNode curRoot = mRootNode;
 			// Loop until we get to a leaf node
 			while(!curRoot.isUniform()) {
 				int splitOn = curRoot.getSplitOn();
-				// Find the appropriate child node, and continue looping
-				for(DTreeNode child : curRoot.getChildren()) {
-					if(child.getFeatureValue() == d.getFeature(splitOn))
-						curRoot = child;
-				}
+				// Find the appropriate child node, and continue looping. If
+				// no training data took this value there's no child, and the
+				// node's majority label stands in for it
+				DTreeNode child = curRoot.getChild(
+						mDataModel.getFeatureCode(row, splitOn));
+				if(child == null)
+					break;
+				curRoot = child;
 			}
-			// Compare the uniform value (label) of the leaf node against
-			// the label of the current Representative. If they're equal,
-			// the tree is accurate in this case, so increment counter
-			if(curRoot.getUniformVal() == d.getLabel())
-				totalAccurate++;
+			// Compare the label of the leaf node against the label of the 
+			// current Representative. If they're equal, the tree is accurate 
+			// in this case, so increment counter
+			int weight = (mWeights == null) ? 1 : mWeights[row];
+			int label = curRoot.isUniform() ? 
+					curRoot.getUniformVal() : curRoot.getMajorityLabel();
+			if(label == mDataModel.getLabelCode(row))
+				totalAccurate += weight;
+			totalWeight += weight;
 		}
 		
 		// Return accuracy percentage
-		return (double)totalAccurate * 100.0d / testData.length;
+		return (double)totalAccurate * 100.0d / totalWeight;
 	}
 
 	@Override
@@ -338,28 +1261,19 @@ class DecisionTree {
 	}
 	
 	/**
-	 * Calculates the entropy of the given data array
-	 * @param data Data to calculate entropy for
-	 * @return Entropy of the specified data set
+	 * Counts the number of data with each label among the specified rows, 
+	 * counting each row as many times as its weight
+	 * @param rows Rows of the data model
+	 * @return The number of data with each label, indexed by label code
 	 */
-	private double calculateEntropy(DataModel.Datum[] data) {
-		
-		int label1Count = 0;
-		// Sum data with first label affilitations
-		for(DataModel.Datum d : data)
-			if(d.getLabel() == mDataModel.getLabel(0)) 
-				label1Count++;
-		
-		// Calculate probabilities
-		double label1Prob = (data.length == 0) ? 
-				0 : (double) label1Count / data.length; 
-		double label2Prob = 1.0d - label1Prob;
-		
-		// Calculate entropy with the binary entropy equation
-		double entropy = -label1Prob * log2(label1Prob) - 
-				label2Prob * log2(label2Prob);
-		
-		return entropy;
+	private int[] countLabels(int[] rows) {
+		int[] labelCounts = new int[mDataModel.getLabels().length];
+		ByteBuffer labels = mDataModel.getLabelColumn();
+		for(int row : rows) {
+			labelCounts[labels.get(row) & 0xFF] += 
+					(mTrainWeights == null) ? 1 : mTrainWeights[row];
+		}
+		return labelCounts;
 	}
 	
 	/**
@@ -368,7 +1282,7 @@ class DecisionTree {
 	 * @param x value to find log of
 	 * @return The log base 2 of the argument. log2(0) is defined as 0.
 	 */
-	private static double log2(double x) {
+	static double log2(double x) {
 		if(x == 0) 
 			return 0;
 		else 
@@ -376,17 +1290,115 @@ class DecisionTree {
 	}
 	
 	/**
-	 * Wrapper class for tracking best node to prune when tuning the tree
+	 * Fills a histogram for a range of features, forking until each task 
+	 * counts a single feature. Each feature writes only its own part of the 
+	 * histogram, so the tasks don't contend.
+	 * @author Nathan P
+	 *
+	 */
+	private class FeatureCountTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private int mStart;
+		private int mEnd;
+		private Histogram mHistogram;
+		private int mFromFeature;
+		private int mToFeature;
+		
+		public FeatureCountTask(int start, int end, Histogram histogram, 
+				int fromFeature, int toFeature) 
+		{
+			mStart = start;
+			mEnd = end;
+			mHistogram = histogram;
+			mFromFeature = fromFeature;
+			mToFeature = toFeature;
+		}
+		
+		@Override
+		protected void compute() {
+			if(mToFeature - mFromFeature == 1) {
+				fillFeatures(mStart, mEnd, mHistogram, 
+						mFromFeature, mToFeature);
+				return;
+			}
+			int mid = (mFromFeature + mToFeature) >>> 1;
+			invokeAll(new FeatureCountTask(mStart, mEnd, mHistogram, 
+							mFromFeature, mid),
+					new FeatureCountTask(mStart, mEnd, mHistogram, 
+							mid, mToFeature));
+		}
+	}
+	
+	/**
+	 * Fills a histogram over a range of the row permutation, splitting the 
+	 * range into shards with private histograms and merging them. Counts 
+	 * are integers, so merging gives exactly the sequential counts.
 	 * @author Nathan P
 	 *
 	 */
-	private class TuneWrapper {
-		public double bestAccuracy;
-		public DTreeNode bestNodeToPrune;
+	private class HistogramTask extends RecursiveTask<Histogram> {
+		private static final long serialVersionUID = 1L;
+		
+		private int mStart;
+		private int mEnd;
+		private int mShardSize;
+		
+		public HistogramTask(int start, int end, int shardSize) {
+			mStart = start;
+			mEnd = end;
+			mShardSize = shardSize;
+		}
+		
+		@Override
+		protected Histogram compute() {
+			if(mEnd - mStart <= mShardSize) {
+				Histogram histogram = newHistogram();
+				for(int f = 0; f < mDataModel.getNumFeatures(); f++) {
+					fillFeatureCounts(mStart, mEnd, f, 
+							histogram.getFeatureCounts(f));
+				}
+				return histogram;
+			}
+			int mid = (mStart + mEnd) >>> 1;
+			HistogramTask right = new HistogramTask(mid, mEnd, mShardSize);
+			right.fork();
+			Histogram histogram = 
+					new HistogramTask(mStart, mid, mShardSize).compute();
+			histogram.add(right.join());
+			return histogram;
+		}
+	}
+	
+	/**
+	 * Builds the subtree under a node from its range of the row permutation.
+	 * The node's histogram may be handed down when it was derived from its 
+	 * parent's.
+	 * @author Nathan P
+	 *
+	 */
+	private class SubtreeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private DTreeNode mRoot;
+		private int mStart;
+		private int mEnd;
+		// The root's histogram if it's already known, null otherwise
+		private Histogram mHistogram;
+		
+		public SubtreeTask(DTreeNode root, int start, int end, 
+				Histogram histogram) 
+		{
+			mRoot = root;
+			mStart = start;
+			mEnd = end;
+			mHistogram = histogram;
+		}
 		
-		public TuneWrapper(DTreeNode nodeToPrune, double accuracy) {
-			bestAccuracy = accuracy;
-			bestNodeToPrune = nodeToPrune;
+		@Override
+		protected void compute() {
+			trainTreeHelper(mRoot, mStart, mEnd, mHistogram);
+			mHistogram = null;
 		}
 	}
 }
\ No newline at end of file
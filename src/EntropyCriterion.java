@@ -0,0 +1,85 @@
+/**
+ * Scores splits by information gain, the reduction in entropy from the node
+ * to its children. By default entropies are computed from counts with an
+ * entropy table, so scoring needs no logs.
+ * @author Nathan P
+ *
+ */
+class EntropyCriterion implements SplitCriterion {
+
+	private static final String TAG = EntropyCriterion.class.getSimpleName();
+
+	// Null to compute entropies from label probabilities instead
+	private EntropyTable mEntropyTable;
+
+	/**
+	 * Builds an information gain criterion using the shared entropy table
+	 */
+	public EntropyCriterion() {
+		mEntropyTable = EntropyTable.getDefault();
+	}
+
+	/**
+	 * Builds an information gain criterion with its own entropy table
+	 * @param tableSize The number of counts to tabulate n*log2(n) for, or 0 
+	 *        to compute entropies from label probabilities with two logs per
+	 *        bucket instead
+	 */
+	public EntropyCriterion(int tableSize) {
+		mEntropyTable = (tableSize > 0) ? new EntropyTable(tableSize) : null;
+	}
+
+	@Override
+	public double score(int[] labelCounts, int[][] featureCounts) {
+		int rootDataLength = 0;
+		for(int count : labelCounts)
+			rootDataLength += count;
+
+		if(mEntropyTable != null) {
+			// The post-split weighted entropy is the sum over the feature
+			// values of (n*log2(n) - sum(c*log2(c))), divided by the node's
+			// size, so the loop needs neither logs nor divisions
+			double splitSum = 0;
+			for(int[] valueCounts : featureCounts) {
+				int valCount = 0;
+				for(int count : valueCounts) {
+					valCount += count;
+					splitSum -= mEntropyTable.nLogN(count);
+				}
+				splitSum += mEntropyTable.nLogN(valCount);
+			}
+			return mEntropyTable.entropy(labelCounts) 
+					- splitSum / rootDataLength;
+		}
+
+		double currentEntropy = 0;
+		for(int[] valueCounts : featureCounts) {
+			int valCount = 0;
+			for(int count : valueCounts)
+				valCount += count;
+			// Add weighted entropy of this subset to running total
+			currentEntropy += ((double)valCount / rootDataLength) 
+					* countEntropy(valueCounts, valCount);
+		}
+		// Subtract the post-split weighted entropy from this node's 
+		// entropy to calculate gain
+		return countEntropy(labelCounts, rootDataLength) - currentEntropy;
+	}
+
+	/**
+	 * Calculates the entropy of a data set from its label counts
+	 * @param labelCounts Number of data with each label
+	 * @param total Number of data in the set
+	 * @return Entropy of the data set
+	 */
+	static double countEntropy(int[] labelCounts, int total) {
+		if(total == 0)
+			return 0;
+		double entropy = 0;
+		for(int count : labelCounts) {
+			double labelProb = (double) count / total;
+			entropy -= labelProb * DecisionTree.log2(labelProb);
+		}
+		return entropy;
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * Evaluates entropies from integer counts. The entropy of a set of n data
+ * whose labels have counts c_1..c_k is (n*log2(n) - sum(c_i*log2(c_i))) / n,
+ * so entropies and gains only need n*log2(n) for counts n. This table holds
+ * n*log2(n) for every count below its size, and computes it for larger
+ * counts. Gains computed this way agree with those computed from label
+ * probabilities to within about 1e-12, differing only in rounding.
+ * @author Nathan P
+ *
+ */
+class EntropyTable {
+
+	private static final String TAG = EntropyTable.class.getSimpleName();
+
+	// The default number of counts tabulated. Node and bucket sizes are
+	// usually well below this
+	public static final int DEFAULT_SIZE = 1 << 16;
+
+	// A table of the default size, shared since it's never written after 
+	// it's built
+	private static final EntropyTable DEFAULT = new EntropyTable(DEFAULT_SIZE);
+
+	// mNLogN[n] is n*log2(n), with 0*log2(0) defined as 0
+	private double[] mNLogN;
+
+	/**
+	 * Builds a table for counts below the specified size
+	 * @param size The number of counts to tabulate
+	 */
+	public EntropyTable(int size) {
+		mNLogN = new double[size];
+		for(int n = 0; n < size; n++)
+			mNLogN[n] = computeNLogN(n);
+	}
+
+	/**
+	 * Returns a shared table of the default size
+	 * @return
+	 */
+	public static EntropyTable getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns n*log2(n) for a count n
+	 * @param n A count
+	 * @return
+	 */
+	public double nLogN(int n) {
+		return (n < mNLogN.length) ? mNLogN[n] : computeNLogN(n);
+	}
+
+	/**
+	 * Calculates the entropy of a data set from its label counts
+	 * @param labelCounts The number of data with each label
+	 * @return Entropy of the data set
+	 */
+	public double entropy(int[] labelCounts) {
+		int total = 0;
+		double sum = 0;
+		for(int count : labelCounts) {
+			total += count;
+			sum += nLogN(count);
+		}
+		return (total == 0) ? 0 : (nLogN(total) - sum) / total;
+	}
+
+	/**
+	 * Calculates n*log2(n)
+	 * @param n A count
+	 * @return
+	 */
+	private static double computeNLogN(int n) {
+		return n * DecisionTree.log2(n);
+	}
+}
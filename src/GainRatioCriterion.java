@@ -0,0 +1,29 @@
+/**
+ * Scores splits by gain ratio, which is information gain divided by the 
+ * split's own entropy over the feature values. This penalizes features 
+ * which scatter a node's data across many small children.
+ * @author Nathan P
+ *
+ */
+class GainRatioCriterion implements SplitCriterion {
+
+	private static final String TAG = GainRatioCriterion.class.getSimpleName();
+
+	private EntropyTable mEntropyTable = EntropyTable.getDefault();
+	private EntropyCriterion mGain = new EntropyCriterion();
+
+	@Override
+	public double score(int[] labelCounts, int[][] featureCounts) {
+		// The split information is the entropy of the children's sizes
+		int[] valueSizes = new int[featureCounts.length];
+		for(int j = 0; j < featureCounts.length; j++) {
+			for(int count : featureCounts[j])
+				valueSizes[j] += count;
+		}
+		double splitInfo = mEntropyTable.entropy(valueSizes);
+		// A split which leaves every datum in one child gains nothing
+		if(splitInfo <= 0)
+			return 0;
+		return mGain.score(labelCounts, featureCounts) / splitInfo;
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Scores splits by the reduction in Gini impurity from the node to its 
+ * children. Gini impurity is 1 - sum(p^2) over the label probabilities p, 
+ * so scoring needs no logs.
+ * @author Nathan P
+ *
+ */
+class GiniCriterion implements SplitCriterion {
+
+	private static final String TAG = GiniCriterion.class.getSimpleName();
+
+	@Override
+	public double score(int[] labelCounts, int[][] featureCounts) {
+		// With n data and label counts c, n * impurity is n - sum(c^2) / n. 
+		// The gain is the node's n * impurity less its children's, over n, 
+		// and the n terms cancel
+		int total = 0;
+		for(int count : labelCounts)
+			total += count;
+		if(total == 0)
+			return 0;
+
+		double childSum = 0;
+		for(int[] valueCounts : featureCounts) {
+			int valCount = 0;
+			for(int count : valueCounts)
+				valCount += count;
+			if(valCount > 0)
+				childSum += sumOfSquares(valueCounts) / valCount;
+		}
+		double nodeSum = sumOfSquares(labelCounts) / total;
+		return (childSum - nodeSum) / total;
+	}
+
+	/**
+	 * Sums the squares of counts
+	 * @param counts Counts to sum
+	 * @return
+	 */
+	private static double sumOfSquares(int[] counts) {
+		double sum = 0;
+		for(int count : counts)
+			sum += (double) count * count;
+		return sum;
+	}
+}
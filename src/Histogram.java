@@ -0,0 +1,116 @@
+/**
+ * A count table of the data at a node, indexed by feature, feature value and
+ * label. Filling one of these in a single pass over a node's data gives
+ * everything needed to score a split on every feature.
+ * @author Nathan P
+ *
+ */
+class Histogram {
+
+	private static final String TAG = Histogram.class.getSimpleName();
+
+	// Counts indexed by [feature][feature value][label]
+	private int[][][] mCounts;
+	private int mNumFeatureValues;
+	private int mNumLabels;
+
+	/**
+	 * Builds an empty histogram
+	 * @param numFeatures The number of features
+	 * @param numFeatureValues The number of feature values
+	 * @param numLabels The number of labels
+	 */
+	public Histogram(int numFeatures, int numFeatureValues, int numLabels) {
+		mCounts = new int[numFeatures][numFeatureValues][numLabels];
+		mNumFeatureValues = numFeatureValues;
+		mNumLabels = numLabels;
+	}
+
+	/**
+	 * Returns the raw count table, indexed by [feature][feature value][label].
+	 * Callers fill it directly in their inner loops
+	 * @return
+	 */
+	public int[][][] getCounts() {
+		return mCounts;
+	}
+
+	/**
+	 * Returns the count table for a single feature, indexed by
+	 * [feature value][label]
+	 * @param feature The feature's index
+	 * @return
+	 */
+	public int[][] getFeatureCounts(int feature) {
+		return mCounts[feature];
+	}
+
+	/**
+	 * Returns the number of data with the specified value on the specified
+	 * feature, across all labels
+	 * @param feature The feature's index
+	 * @param featureValue The feature value's index
+	 * @return
+	 */
+	public int getValueCount(int feature, int featureValue) {
+		int total = 0;
+		int[] labelCounts = mCounts[feature][featureValue];
+		for(int i = 0; i < mNumLabels; i++)
+			total += labelCounts[i];
+		return total;
+	}
+
+	/**
+	 * Returns the number of data with the specified value on the specified
+	 * feature and the specified label
+	 * @param feature The feature's index
+	 * @param featureValue The feature value's index
+	 * @param label The label's index
+	 * @return
+	 */
+	public int getCount(int feature, int featureValue, int label) {
+		return mCounts[feature][featureValue][label];
+	}
+
+	/**
+	 * Adds another histogram's counts to this one's. Both histograms must 
+	 * have the same dimensions
+	 * @param other Histogram whose counts to add
+	 */
+	public void add(Histogram other) {
+		int[][][] otherCounts = other.mCounts;
+		for(int f = 0; f < mCounts.length; f++) {
+			for(int v = 0; v < mNumFeatureValues; v++) {
+				int[] labelCounts = mCounts[f][v];
+				int[] otherLabelCounts = otherCounts[f][v];
+				for(int l = 0; l < mNumLabels; l++)
+					labelCounts[l] += otherLabelCounts[l];
+			}
+		}
+	}
+
+	/**
+	 * Subtracts another histogram's counts from this one's, such as a child's
+	 * from its parent's. Both histograms must have the same dimensions
+	 * @param other Histogram whose counts to subtract
+	 */
+	public void subtract(Histogram other) {
+		int[][][] otherCounts = other.mCounts;
+		for(int f = 0; f < mCounts.length; f++) {
+			for(int v = 0; v < mNumFeatureValues; v++) {
+				int[] labelCounts = mCounts[f][v];
+				int[] otherLabelCounts = otherCounts[f][v];
+				for(int l = 0; l < mNumLabels; l++)
+					labelCounts[l] -= otherLabelCounts[l];
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of feature values this histogram counts
+	 * @return
+	 */
+	public int getNumFeatureValues() {
+		return mNumFeatureValues;
+	}
+}
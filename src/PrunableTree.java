@@ -0,0 +1,189 @@
+import java.util.PriorityQueue;
+
+/**
+ * A decision tree's shape copied into arrays, for pruners which repeatedly
+ * make the best of several candidate nodes a leaf. Nodes are numbered in
+ * preorder down to the tree's leaves, so each node's subtree is the range
+ * of numbers starting at its own, and collapsing a subtree only changes
+ * the counts of its root's ancestors. Candidates wait in a heap ordered by
+ * their priority, so finding the best doesn't walk the tree. A node's
+ * priority changes when a descendant collapses, so rather than being
+ * updated in place candidates are offered again, and outdated ones are
+ * discarded when they reach the top.
+ * @author Nathan P
+ *
+ */
+abstract class PrunableTree {
+
+	private static final String TAG = PrunableTree.class.getSimpleName();
+
+	protected DTreeNode[] mNodes;
+	// The number of each node's parent, or NONE for the root
+	protected int[] mParents;
+	// One past the number of the last node in each node's subtree
+	protected int[] mSubtreeEnds;
+	// The label each node gives if it's a leaf
+	protected int[] mLeafLabels;
+	// Whether each node is a leaf, either as built or because it was
+	// collapsed
+	protected boolean[] mLeaves;
+	// Whether each node was cut off by collapsing an ancestor
+	protected boolean[] mRemoved;
+	protected int mNumNodes;
+	// Candidates, lowest priority first
+	private PriorityQueue<Candidate> mCandidates;
+
+	/**
+	 * Numbers the nodes of a tree
+	 * @param root The tree's root
+	 */
+	protected PrunableTree(DTreeNode root) {
+		int size = countNodes(root);
+		mNodes = new DTreeNode[size];
+		mParents = new int[size];
+		mSubtreeEnds = new int[size];
+		mLeafLabels = new int[size];
+		mLeaves = new boolean[size];
+		mRemoved = new boolean[size];
+		number(root, DTreeNode.NONE);
+		mCandidates = new PriorityQueue<Candidate>();
+	}
+
+	/**
+	 * Returns a node's priority as a candidate. Lower priorities are
+	 * better, and ties go to the node first in preorder
+	 * @param node The node's number
+	 * @return
+	 */
+	protected abstract double priority(int node);
+
+	/**
+	 * Returns whether a node which isn't a leaf is worth offering as a
+	 * candidate
+	 * @param node The node's number
+	 * @return
+	 */
+	protected boolean isCandidate(int node) {
+		return true;
+	}
+
+	/**
+	 * Counts the nodes of a subtree, down to its leaves
+	 * @param root The subtree's root
+	 * @return
+	 */
+	private static int countNodes(DTreeNode root) {
+		if(root.isUniform())
+			return 1;
+		int size = 1;
+		for(DTreeNode child : root.getChildren())
+			size += countNodes(child);
+		return size;
+	}
+
+	/**
+	 * Numbers a subtree's nodes in preorder, starting from the next free
+	 * number
+	 * @param root The subtree's root
+	 * @param parent The number of the root's parent, or NONE
+	 */
+	private void number(DTreeNode root, int parent) {
+		int n = mNumNodes++;
+		mNodes[n] = root;
+		mParents[n] = parent;
+		mLeaves[n] = root.isUniform();
+		mLeafLabels[n] = mLeaves[n] ?
+				root.getUniformVal() : root.getMajorityLabel();
+		if(!mLeaves[n]) {
+			for(DTreeNode child : root.getChildren())
+				number(child, n);
+		}
+		mSubtreeEnds[n] = mNumNodes;
+	}
+
+	/**
+	 * Adds each node's count to its ancestors', turning counts of single
+	 * nodes into counts of their subtrees
+	 * @param counts A count for each node, replaced by its subtree's count
+	 */
+	protected void sumSubtrees(long[] counts) {
+		// Parents are numbered before their children, so one backwards pass
+		// sums each subtree
+		for(int n = mNumNodes - 1; n > 0; n--)
+			counts[mParents[n]] += counts[n];
+	}
+
+	/**
+	 * Adds a node as a candidate if it isn't a leaf and is worth offering
+	 * @param node The node's number
+	 */
+	protected void offer(int node) {
+		if(!mLeaves[node] && isCandidate(node))
+			mCandidates.add(new Candidate(node, priority(node)));
+	}
+
+	/**
+	 * Offers every node as a candidate
+	 */
+	protected void offerAll() {
+		for(int n = 0; n < mNumNodes; n++)
+			offer(n);
+	}
+
+	/**
+	 * Finds the candidate with the lowest priority, discarding candidates
+	 * which are outdated, have become leaves, or were cut off
+	 * @return The candidate's number, or NONE if there are no candidates
+	 */
+	protected int findBest() {
+		while(!mCandidates.isEmpty()) {
+			Candidate best = mCandidates.peek();
+			int n = best.mNode;
+			if(!mLeaves[n] && !mRemoved[n] && best.mPriority == priority(n))
+				return n;
+			mCandidates.poll();
+		}
+		return DTreeNode.NONE;
+	}
+
+	/**
+	 * Makes a node a leaf in the snapshot and cuts off its subtree,
+	 * skipping over subtrees already cut off. The tree itself isn't
+	 * changed, and the ancestors' counts are left to the caller
+	 * @param node The node's number
+	 */
+	protected void collapse(int node) {
+		mLeaves[node] = true;
+		int n = node + 1;
+		while(n < mSubtreeEnds[node]) {
+			if(mRemoved[n]) {
+				n = mSubtreeEnds[n];
+			} else {
+				mRemoved[n] = true;
+				n++;
+			}
+		}
+	}
+
+	/**
+	 * A candidate node, ordered by increasing priority and then by preorder
+	 * @author Nathan P
+	 *
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+		public int mNode;
+		public double mPriority;
+
+		public Candidate(int node, double priority) {
+			mNode = node;
+			mPriority = priority;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			if(mPriority != other.mPriority)
+				return Double.compare(mPriority, other.mPriority);
+			return Integer.compare(mNode, other.mNode);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Scores the split of a node's data on a feature, for choosing which feature
+ * a node splits on. The trainer splits on the feature with the highest score,
+ * and makes the node a leaf if no score is above zero. Criteria work only on
+ * label counts, so they can score histograms however they were filled, and
+ * must be safe to call from several threads at once.
+ * @author Nathan P
+ *
+ */
+interface SplitCriterion {
+
+	/**
+	 * Scores splitting a node's data on a feature
+	 * @param labelCounts The number of the node's data with each label
+	 * @param featureCounts The number of the node's data with each feature 
+	 *        value and label, indexed by [feature value][label]
+	 * @return The split's score. Zero or less if the split is no better than
+	 *         not splitting
+	 */
+	double score(int[] labelCounts, int[][] featureCounts);
+
+	/**
+	 * Returns the criterion with the specified name, which is one of 
+	 * "entropy", "gini", "gainratio" or "chisquare"
+	 * @param name The criterion's name, in any case
+	 * @return
+	 * @throws IllegalArgumentException If there is no such criterion
+	 */
+	static SplitCriterion forName(String name) {
+		switch(name.toLowerCase()) {
+		case "entropy":
+			return new EntropyCriterion();
+		case "gini":
+			return new GiniCriterion();
+		case "gainratio":
+			return new GainRatioCriterion();
+		case "chisquare":
+			return new ChiSquareCriterion();
+		default:
+			throw new IllegalArgumentException("Unknown split criterion " 
+					+ name);
+		}
+	}
+}
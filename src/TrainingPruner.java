@@ -0,0 +1,192 @@
+import java.util.Arrays;
+
+/**
+ * Prunes a decision tree from its training counts alone, so that no rows
+ * need to be held out for tuning. Two methods are provided: C4.5's
+ * pessimistic error pruning, and CART's cost-complexity pruning. Counts are
+ * weighted, as the nodes' label counts are.
+ * @author Nathan P
+ *
+ */
+class TrainingPruner {
+
+	private static final String TAG = TrainingPruner.class.getSimpleName();
+
+	// The normal deviate for C4.5's default confidence factor of 25%. The
+	// upper limit of a leaf's error rate at this confidence is taken as its
+	// true error rate
+	private static final double PESSIMISTIC_Z = 0.6744897501960817;
+
+	/**
+	 * Does pessimistic error pruning, in one bottom-up pass. Each node's
+	 * errors as a leaf are estimated by the upper confidence limit of its
+	 * training error rate, and a subtree is pruned if that estimate is no
+	 * more than the sum of its leaves' estimates.
+	 * @param root Root of the tree
+	 */
+	public static void prunePessimistic(DTreeNode root) {
+		pessimisticHelper(root);
+	}
+
+	/**
+	 * Recursive helper for pessimistic error pruning
+	 * @param root Current root
+	 * @return The estimated errors of the root's subtree, once pruned
+	 */
+	private static double pessimisticHelper(DTreeNode root) {
+		int label = root.isUniform() ?
+				root.getUniformVal() : root.getMajorityLabel();
+		int size = root.getSize();
+		double leafErrors = estimateErrors(size,
+				size - root.getLabelCounts()[label]);
+		if(root.isUniform())
+			return leafErrors;
+
+		double subtreeErrors = 0;
+		for(DTreeNode child : root.getChildren())
+			subtreeErrors += pessimisticHelper(child);
+		if(leafErrors <= subtreeErrors) {
+			root.setUniform(label);
+			return leafErrors;
+		}
+		return subtreeErrors;
+	}
+
+	/**
+	 * Estimates the errors a leaf would make on unseen data, as in C4.5
+	 * @param size The weight of the leaf's training data
+	 * @param errors The weight of the training data the leaf mislabels
+	 * @return
+	 */
+	static double estimateErrors(double size, double errors) {
+		if(size == 0)
+			return 0;
+		return errors + addedErrors(size, errors);
+	}
+
+	/**
+	 * Calculates how many errors to add to a leaf's training errors to reach
+	 * the upper confidence limit of its error rate, using the normal
+	 * approximation to the binomial except where it breaks down
+	 * @param size The weight of the leaf's training data
+	 * @param errors The weight of the training data the leaf mislabels
+	 * @return
+	 */
+	private static double addedErrors(double size, double errors) {
+		// With under one error, interpolate towards the exact limit for none
+		if(errors < 1) {
+			double none = size * (1 - Math.pow(0.25, 1 / size));
+			if(errors == 0)
+				return none;
+			return none + errors * (addedErrors(size, 1) - none);
+		}
+		if(errors + 0.5 >= size)
+			return Math.max(size - errors, 0);
+
+		double z2 = PESSIMISTIC_Z * PESSIMISTIC_Z;
+		double rate = (errors + 0.5) / size;
+		double limit = (rate + z2 / (2 * size)
+				+ PESSIMISTIC_Z * Math.sqrt(rate / size - rate * rate / size
+						+ z2 / (4 * size * size)))
+				/ (1 + z2 / size);
+		return limit * size - errors;
+	}
+
+	/**
+	 * Does cost-complexity pruning. The whole pruning path is found in one
+	 * sweep, by repeatedly pruning the weakest link: the node whose subtree
+	 * saves the fewest training errors per leaf it adds. The tree is then
+	 * pruned at every step of the path whose penalty is at most the
+	 * specified penalty.
+	 * @param root Root of the tree
+	 * @param penalty The complexity penalty, in training errors per leaf. A
+	 *        subtree is kept only if it saves more than this many errors
+	 *        per leaf it adds
+	 * @return The penalty at each step of the pruning path, in
+	 *         nondecreasing order. The last step prunes the root
+	 */
+	public static double[] pruneCostComplexity(DTreeNode root,
+			double penalty)
+	{
+		return new CostComplexityPath(root).prune(penalty);
+	}
+
+	/**
+	 * The weakest-link pruning path of a tree. The path is found on copies 
+	 * of the nodes' counts without touching the tree, and the weakest link
+	 * is the candidate of lowest strength.
+	 * @author Nathan P
+	 *
+	 */
+	private static class CostComplexityPath extends PrunableTree {
+
+		// The training errors each node makes as a leaf
+		private long[] mLeafErrors;
+		// The training errors and leaves of each node's subtree
+		private long[] mSubtreeErrors;
+		private long[] mSubtreeLeaves;
+
+		public CostComplexityPath(DTreeNode root) {
+			super(root);
+			mLeafErrors = new long[mNumNodes];
+			mSubtreeErrors = new long[mNumNodes];
+			mSubtreeLeaves = new long[mNumNodes];
+			for(int n = 0; n < mNumNodes; n++) {
+				mLeafErrors[n] = mNodes[n].getSize()
+						- mNodes[n].getLabelCounts()[mLeafLabels[n]];
+				if(mLeaves[n]) {
+					mSubtreeErrors[n] = mLeafErrors[n];
+					mSubtreeLeaves[n] = 1;
+				}
+			}
+			sumSubtrees(mSubtreeErrors);
+			sumSubtrees(mSubtreeLeaves);
+			offerAll();
+		}
+
+		/**
+		 * Returns the training errors a node's subtree saves per leaf it
+		 * adds over the node being a leaf
+		 * @param node The node's number
+		 * @return
+		 */
+		@Override
+		protected double priority(int node) {
+			return (double)(mLeafErrors[node] - mSubtreeErrors[node])
+					/ (mSubtreeLeaves[node] - 1);
+		}
+
+		/**
+		 * Follows the pruning path until the root is a leaf, pruning the
+		 * tree itself at the steps whose penalty is within the specified
+		 * penalty
+		 * @param penalty The complexity penalty
+		 * @return The penalty at each step of the path
+		 */
+		public double[] prune(double penalty) {
+			double[] path = new double[mNumNodes];
+			int steps = 0;
+			double stepPenalty = Double.NEGATIVE_INFINITY;
+			int node;
+			while((node = findBest()) != DTreeNode.NONE) {
+				// A step never needs a smaller penalty than the one before
+				stepPenalty = Math.max(stepPenalty, priority(node));
+				path[steps++] = stepPenalty;
+				if(stepPenalty <= penalty)
+					mNodes[node].setUniform(mLeafLabels[node]);
+
+				// Collapse the node's subtree, and update its ancestors
+				long savedErrors = mLeafErrors[node] - mSubtreeErrors[node];
+				long savedLeaves = mSubtreeLeaves[node] - 1;
+				collapse(node);
+				for(int n = node; n != DTreeNode.NONE; n = mParents[n]) {
+					mSubtreeErrors[n] += savedErrors;
+					mSubtreeLeaves[n] -= savedLeaves;
+					if(n != node)
+						offer(n);
+				}
+			}
+			return Arrays.copyOf(path, steps);
+		}
+	}
+}
@@ -0,0 +1,338 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses .tsv data files into data models. The file is memory mapped and
+ * scanned byte by byte for tab and newline delimiters, and feature values are
+ * handed to the data model builder as bytes, so no intermediate strings are
+ * built for them. Labels and feature values must be single-byte characters.
+ * Large files can be split into chunks of whole lines and parsed 
+ * concurrently.
+ * @author Nathan P
+ *
+ */
+public class TsvParser {
+
+	private static final String TAG = TsvParser.class.getSimpleName();
+
+	private static final byte TAB = '\t';
+	private static final byte NEWLINE = '\n';
+	private static final byte CARRIAGE_RETURN = '\r';
+
+	// The largest region of the file mapped at once
+	private static final long MAX_MAPPING_SIZE = 1L << 30;
+	// The smallest chunk worth handing to its own thread
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+	// How much of the file to read at once when looking for a line break
+	private static final int SEEK_BUFFER_SIZE = 4096;
+
+	private static final String ILLEGAL_LINE_MESSAGE = "Illegal line in "
+			+ "data file. Each data entry must have a unique "
+			+ "identifier, a label, and a string of feaures";
+
+	/**
+	 * Parses the specified data file into a data model.
+	 * Error checking is minimal, this parser mostly assumes that the file
+	 * is "to spec"
+	 * @param filePath Path to file
+	 * @return A data model representing the file's data
+	 */
+	public static DataModel parseFile(String filePath) {
+		return parseFile(filePath, 1);
+	}
+
+	/**
+	 * Parses the specified data file into a data model, using up to the 
+	 * specified number of threads. The file is split into byte ranges of 
+	 * whole lines, each range is parsed into its own builder, and the 
+	 * builders are merged in file order. The result is the same as parsing 
+	 * the file on one thread.
+	 * @param filePath Path to file
+	 * @param numThreads The number of threads to parse with
+	 * @return A data model representing the file's data
+	 */
+	public static DataModel parseFile(String filePath, int numThreads) {
+		return parseFile(filePath, numThreads, false);
+	}
+
+	/**
+	 * Parses the specified data file into a data model, using up to the 
+	 * specified number of threads, and optionally holding the data model off
+	 * the heap
+	 * @param filePath Path to file
+	 * @param numThreads The number of threads to parse with
+	 * @param offHeap True to hold the data model's data off the heap
+	 * @return A data model representing the file's data
+	 */
+	public static DataModel parseFile(String filePath, int numThreads, 
+			boolean offHeap) 
+	{
+		return parseFile(filePath, numThreads, offHeap, false);
+	}
+
+	/**
+	 * Parses the specified data file into a data model, using up to the 
+	 * specified number of threads, optionally holding the data model off the
+	 * heap, and optionally collapsing identical data into weighted rows
+	 * @param filePath Path to file
+	 * @param numThreads The number of threads to parse with
+	 * @param offHeap True to hold the data model's data off the heap
+	 * @param deduplicate True to collapse identical data into weighted rows
+	 * @return A data model representing the file's data
+	 */
+	public static DataModel parseFile(String filePath, int numThreads, 
+			boolean offHeap, boolean deduplicate) 
+	{
+		DataModel.Builder dataBuilder = 
+				new DataModel.Builder(offHeap, deduplicate);
+		try(RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+			FileChannel channel = file.getChannel();
+			long[] bounds = findChunkBounds(channel, numThreads);
+			if(bounds.length == 2)
+				parseRange(channel, 0, channel.size(), dataBuilder);
+			else
+				dataBuilder = parseChunks(channel, bounds, numThreads, offHeap,
+						deduplicate);
+		} catch (IOException e) {
+			Log.e(TAG, e.getMessage());
+		}
+
+		return dataBuilder.buildDataModel();
+	}
+
+	/**
+	 * Splits a data file into chunks of whole lines, one per thread, unless 
+	 * that would make the chunks too small to be worth it
+	 * @param channel Channel of the data file
+	 * @param numThreads The number of threads to parse with
+	 * @return Chunk boundaries. Chunk i spans [bounds[i], bounds[i+1])
+	 * @throws IOException If the file can't be read
+	 */
+	private static long[] findChunkBounds(FileChannel channel, int numThreads)
+			throws IOException
+	{
+		long size = channel.size();
+		int numChunks = (int) Math.max(1, 
+				Math.min(numThreads, size / MIN_CHUNK_SIZE));
+		long[] bounds = new long[numChunks + 1];
+		ByteBuffer seekBuffer = ByteBuffer.allocate(SEEK_BUFFER_SIZE);
+		for(int i = 1; i < numChunks; i++) {
+			// Move each nominal boundary forward to just past a line break
+			long nominal = Math.max(size / numChunks * i, bounds[i-1]);
+			bounds[i] = findLineStart(channel, nominal, seekBuffer);
+		}
+		bounds[numChunks] = size;
+		return bounds;
+	}
+
+	/**
+	 * Finds the start of the first line beginning at or after the specified 
+	 * offset, other than a line beginning exactly at the offset
+	 * @param channel Channel of the data file
+	 * @param offset Offset to search from
+	 * @param seekBuffer Buffer to read the file through
+	 * @return Offset just past the first line break at or after the offset, 
+	 *         or the file size if there is none
+	 * @throws IOException If the file can't be read
+	 */
+	private static long findLineStart(FileChannel channel, long offset, 
+			ByteBuffer seekBuffer) throws IOException
+	{
+		long pos = offset;
+		while(true) {
+			seekBuffer.clear();
+			int read = channel.read(seekBuffer, pos);
+			if(read <= 0)
+				return channel.size();
+			for(int i = 0; i < read; i++) {
+				if(seekBuffer.get(i) == NEWLINE)
+					return pos + i + 1;
+			}
+			pos += read;
+		}
+	}
+
+	/**
+	 * Parses each chunk of a data file into its own builder on a thread pool,
+	 * and merges the builders in file order
+	 * @param channel Channel of the data file
+	 * @param bounds Chunk boundaries. Chunk i spans [bounds[i], bounds[i+1])
+	 * @param numThreads The number of threads to parse with
+	 * @param offHeap True to hold the chunks' data off the heap
+	 * @param deduplicate True to collapse identical data into weighted rows
+	 * @return A builder holding every chunk's data
+	 * @throws IOException If the file can't be read
+	 */
+	private static DataModel.Builder parseChunks(final FileChannel channel, 
+			long[] bounds, int numThreads, final boolean offHeap, 
+			final boolean deduplicate) throws IOException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<DataModel.Builder>> chunks = 
+					new ArrayList<Future<DataModel.Builder>>();
+			for(int i = 0; i < bounds.length - 1; i++) {
+				final long start = bounds[i];
+				final long end = bounds[i+1];
+				chunks.add(executor.submit(new Callable<DataModel.Builder>() {
+					@Override
+					public DataModel.Builder call() throws IOException {
+						DataModel.Builder chunkBuilder = 
+								new DataModel.Builder(offHeap, deduplicate);
+						parseRange(channel, start, end, chunkBuilder);
+						return chunkBuilder;
+					}
+				}));
+			}
+
+			// Merging revalidates the labels and feature lengths across chunks
+			DataModel.Builder dataBuilder = awaitChunk(chunks.get(0));
+			for(int i = 1; i < chunks.size(); i++)
+				dataBuilder.addAll(awaitChunk(chunks.get(i)));
+			return dataBuilder;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for a chunk to be parsed, rethrowing anything its parsing threw
+	 * @param chunk The chunk's pending result
+	 * @return The chunk's builder
+	 * @throws IOException If the chunk couldn't be read
+	 */
+	private static DataModel.Builder awaitChunk(
+			Future<DataModel.Builder> chunk) throws IOException
+	{
+		try {
+			return chunk.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing data file", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Parses the lines in a region of a data file into the builder. The region
+	 * must start at the beginning of a line, and end at the end of one.
+	 * @param channel Channel of the data file
+	 * @param start Offset of the region in the file
+	 * @param end One past the last offset of the region
+	 * @param dataBuilder Builder to add the parsed data to
+	 * @throws IOException If the file can't be mapped
+	 */
+	static void parseRange(FileChannel channel, long start, long end,
+			DataModel.Builder dataBuilder) throws IOException
+	{
+		byte[] features = new byte[64];
+		long pos = start;
+		while(pos < end) {
+			// Map as much as we can. Only whole lines are parsed from each
+			// mapping, and the next mapping picks up at the first unparsed line
+			long size = Math.min(end - pos, MAX_MAPPING_SIZE);
+			MappedByteBuffer buffer =
+					channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+			boolean lastMapping = (pos + size == end);
+			int limit = (int) size;
+
+			int lineStart = 0;
+			while(lineStart < limit) {
+				// Find the end of the line
+				int lineEnd = lineStart;
+				while(lineEnd < limit && buffer.get(lineEnd) != NEWLINE)
+					lineEnd++;
+				// A line cut off by the end of the mapping is left for the
+				// next one, unless this is the end of the region
+				if(lineEnd == limit && !lastMapping)
+					break;
+
+				features = parseLine(buffer, lineStart, lineEnd, features,
+						dataBuilder);
+				lineStart = lineEnd + 1;
+			}
+
+			if(lineStart == 0)
+				throw new IllegalArgumentException("Line in data file is too "
+						+ "long to map");
+			pos += Math.min(lineStart, limit);
+		}
+	}
+
+	/**
+	 * Parses one line of a data file into the builder
+	 * @param buffer Buffer holding the line
+	 * @param lineStart Index of the line's first byte
+	 * @param lineEnd Index of the line's newline, or of the end of the data
+	 * @param features Scratch space for the line's feature values
+	 * @param dataBuilder Builder to add the parsed datum to
+	 * @return Scratch space for feature values, grown if it was too small
+	 */
+	private static byte[] parseLine(MappedByteBuffer buffer,
+			int lineStart, int lineEnd, byte[] features,
+			DataModel.Builder dataBuilder)
+	{
+		// Ignore the carriage return of a Windows line ending
+		if(lineEnd > lineStart && buffer.get(lineEnd - 1) == CARRIAGE_RETURN)
+			lineEnd--;
+		// Trailing empty tokens don't count, as with String.split()
+		while(lineEnd > lineStart && buffer.get(lineEnd - 1) == TAB)
+			lineEnd--;
+
+		// Find the tabs separating the identifier, label and features
+		int idEnd = findTab(buffer, lineStart, lineEnd);
+		int labelEnd = findTab(buffer, idEnd + 1, lineEnd);
+		int featuresEnd = findTab(buffer, labelEnd + 1, lineEnd);
+		// Ensure we have a complete datum
+		if(labelEnd >= lineEnd || featuresEnd != lineEnd
+				|| labelEnd == idEnd + 1)
+			throw new IllegalArgumentException(ILLEGAL_LINE_MESSAGE);
+
+		// Only the identifier becomes a string
+		byte[] id = new byte[idEnd - lineStart];
+		buffer.get(lineStart, id);
+		char label = (char) (buffer.get(idEnd + 1) & 0xFF);
+
+		int featureLength = featuresEnd - (labelEnd + 1);
+		if(features.length < featureLength)
+			features = new byte[featureLength];
+		buffer.get(labelEnd + 1, features, 0, featureLength);
+
+		dataBuilder.addDatum(new String(id, StandardCharsets.UTF_8), label,
+				features, 0, featureLength);
+		return features;
+	}
+
+	/**
+	 * Finds the first tab in a range of the buffer
+	 * @param buffer Buffer to search
+	 * @param from Index to start searching at
+	 * @param to Index to stop searching at
+	 * @return Index of the first tab, or the end of the range if none exists
+	 */
+	private static int findTab(MappedByteBuffer buffer, int from, int to) {
+		int i = from;
+		while(i < to && buffer.get(i) != TAB)
+			i++;
+		return Math.min(i, to);
+	}
+}
@@ -0,0 +1,249 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A tuning set's counts at each node of a decision tree, for reduced-error
+ * pruning. The tuning rows are routed through the tree once, recording at
+ * each node the weight of the rows which would be labeled correctly if the
+ * node were a leaf, and the weight its subtree currently labels correctly.
+ * The change in accuracy from pruning a node is then the difference of its
+ * two counts, and pruning it only changes the counts of its ancestors.
+ * Prunes which would increase accuracy are candidates, best gain first.
+ * The tree's shape is copied into arrays which routing only reads, so 
+ * shards of a large tuning set are routed concurrently.
+ * @author Nathan P
+ *
+ */
+class TuningCounts extends PrunableTree {
+
+	private static final String TAG = TuningCounts.class.getSimpleName();
+
+	private DataModel mDataModel;
+	private int[] mWeights;
+	// The feature each node splits on
+	private int[] mSplitOn;
+	// Each node's children's numbers, indexed by the codes of the feature 
+	// values they represent, with NONE for values with no child. Null for 
+	// leaves
+	private int[][] mChildNumbers;
+	// The weight of the tuning rows reaching each node which its leaf label
+	// labels correctly
+	private long[] mLeafCorrect;
+	// The weight of the tuning rows reaching each node which its subtree
+	// labels correctly
+	private long[] mSubtreeCorrect;
+	private long mTotalWeight;
+
+	/**
+	 * Numbers the nodes of a tree and routes a tuning set through it
+	 * @param root The tree's root
+	 * @param dataModel The data model the tree classifies
+	 * @param weights Each row's weight, or null if every row counts once
+	 * @param tuningData Rows of the data model to tune on
+	 * @param pool Pool to route the tuning set in, if it's larger than a 
+	 *        shard
+	 * @param shardSize The most tuning rows a thread routes
+	 */
+	public TuningCounts(DTreeNode root, DataModel dataModel, int[] weights,
+			int[] tuningData, ForkJoinPool pool, int shardSize)
+	{
+		super(root);
+		mDataModel = dataModel;
+		mWeights = weights;
+		mSplitOn = new int[mNumNodes];
+		mChildNumbers = new int[mNumNodes][];
+		for(int n = 0; n < mNumNodes; n++) {
+			if(mLeaves[n])
+				continue;
+			mSplitOn[n] = mNodes[n].getSplitOn();
+			mChildNumbers[n] = new int[dataModel.getNumFeatureValues()];
+			Arrays.fill(mChildNumbers[n], DTreeNode.NONE);
+			// Each child's subtree is followed by its next sibling's
+			int child = n + 1;
+			for(DTreeNode node : mNodes[n].getChildren()) {
+				mChildNumbers[n][node.getFeatureValue()] = child;
+				child = mSubtreeEnds[child];
+			}
+		}
+
+		// Route the tuning set, in shards if it's large
+		RouteTask task = new RouteTask(tuningData, 0, tuningData.length, 
+				shardSize);
+		RowCounts counts;
+		if(tuningData.length <= shardSize)
+			counts = task.compute();
+		else if(ForkJoinTask.inForkJoinPool())
+			counts = task.invoke();
+		else
+			counts = pool.invoke(task);
+		mLeafCorrect = counts.mLeafCorrect;
+		mSubtreeCorrect = counts.mEndCorrect;
+		mTotalWeight = counts.mTotalWeight;
+		sumSubtrees(mSubtreeCorrect);
+		offerAll();
+	}
+
+	/**
+	 * Routes a range of the tuning set down to the nodes that label its 
+	 * rows, counting each row at every node on the way
+	 * @param tuningData Rows of the data model to tune on
+	 * @param start First index of the range
+	 * @param end One past the last index of the range
+	 * @return The range's counts
+	 */
+	private RowCounts route(int[] tuningData, int start, int end) {
+		RowCounts counts = new RowCounts(mNodes.length);
+		for(int i = start; i < end; i++) {
+			int row = tuningData[i];
+			int label = mDataModel.getLabelCode(row);
+			int weight = (mWeights == null) ? 1 : mWeights[row];
+			int n = 0;
+			while(true) {
+				if(mLeafLabels[n] == label)
+					counts.mLeafCorrect[n] += weight;
+				if(mLeaves[n])
+					break;
+				// If no training data took this value there's no child,
+				// and the node's majority label stands in for it
+				int child = mChildNumbers[n][
+						mDataModel.getFeatureCode(row, mSplitOn[n])];
+				if(child == DTreeNode.NONE)
+					break;
+				n = child;
+			}
+			if(mLeafLabels[n] == label)
+				counts.mEndCorrect[n] += weight;
+			counts.mTotalWeight += weight;
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the percentage of the tuning set which the tree labels
+	 * correctly, counting rows by weight
+	 * @return
+	 */
+	public double getAccuracy() {
+		return (double)mSubtreeCorrect[0] * 100.0d / mTotalWeight;
+	}
+
+	/**
+	 * Returns the change in the weight of correctly labeled tuning rows if
+	 * the specified node were pruned. Only meaningful for nodes which are
+	 * still in the tree
+	 * @param node The node's number
+	 * @return
+	 */
+	public long getGain(int node) {
+		return mLeafCorrect[node] - mSubtreeCorrect[node];
+	}
+
+	/**
+	 * Finds the node whose pruning would most increase the tree's accuracy.
+	 * Ties go to the node first in preorder, and nodes inside subtrees that
+	 * have been pruned away aren't considered.
+	 * @return The node's number, or NONE if no prune would increase the
+	 *         tree's accuracy
+	 */
+	public int findBestPrune() {
+		return findBest();
+	}
+
+	/**
+	 * Prunes a node, making it a leaf with its majority label, and updates
+	 * its ancestors' counts and candidate prunes
+	 * @param node The node's number
+	 */
+	public void prune(int node) {
+		long gain = getGain(node);
+		mNodes[node].setUniform(mLeafLabels[node]);
+		collapse(node);
+		mSubtreeCorrect[node] += gain;
+		for(int n = mParents[node]; n != DTreeNode.NONE; n = mParents[n]) {
+			mSubtreeCorrect[n] += gain;
+			offer(n);
+		}
+	}
+
+	@Override
+	protected double priority(int node) {
+		return -getGain(node);
+	}
+
+	@Override
+	protected boolean isCandidate(int node) {
+		return getGain(node) > 0;
+	}
+
+	/**
+	 * The counts from routing part of a tuning set
+	 * @author Nathan P
+	 *
+	 */
+	private static class RowCounts {
+		// The weight of the rows reaching each node which its leaf label 
+		// labels correctly
+		public long[] mLeafCorrect;
+		// The weight of the rows which each node labels correctly, counting
+		// only rows that end at the node
+		public long[] mEndCorrect;
+		public long mTotalWeight;
+
+		public RowCounts(int numNodes) {
+			mLeafCorrect = new long[numNodes];
+			mEndCorrect = new long[numNodes];
+		}
+
+		/**
+		 * Adds another part's counts to these
+		 * @param other The other part's counts
+		 */
+		public void add(RowCounts other) {
+			for(int n = 0; n < mLeafCorrect.length; n++) {
+				mLeafCorrect[n] += other.mLeafCorrect[n];
+				mEndCorrect[n] += other.mEndCorrect[n];
+			}
+			mTotalWeight += other.mTotalWeight;
+		}
+	}
+
+	/**
+	 * Routes a range of the tuning set, splitting it in halves until each 
+	 * is at most a shard, and adding the halves' counts
+	 * @author Nathan P
+	 *
+	 */
+	private class RouteTask extends RecursiveTask<RowCounts> {
+		private static final long serialVersionUID = 1L;
+
+		private int[] mTuningData;
+		private int mStart;
+		private int mEnd;
+		private int mShardSize;
+
+		public RouteTask(int[] tuningData, int start, int end, 
+				int shardSize) 
+		{
+			mTuningData = tuningData;
+			mStart = start;
+			mEnd = end;
+			mShardSize = shardSize;
+		}
+
+		@Override
+		protected RowCounts compute() {
+			if(mEnd - mStart <= mShardSize)
+				return route(mTuningData, mStart, mEnd);
+			int mid = (mStart + mEnd) >>> 1;
+			RouteTask right = new RouteTask(mTuningData, mid, mEnd, 
+					mShardSize);
+			right.fork();
+			RowCounts counts = new RouteTask(mTuningData, mStart, mid, 
+					mShardSize).compute();
+			counts.add(right.join());
+			return counts;
+		}
+	}
+}
@@ -1,7 +1,9 @@
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A main class for testing the decision tree.
@@ -15,20 +17,52 @@ public class VotingTester {
 	// Path to default voting data file
 	private static final String VOTING_DATA_FILE = "voting-data.tsv";
 	
-	private static final String TAB_DELIMITER = "\\t";
+	// Option selecting the split criterion, followed by its name
+	private static final String CRITERION_OPTION = "--criterion=";
+	// Option selecting the pruning mode, followed by its name
+	private static final String PRUNING_OPTION = "--pruning=";
 	
 	/**
-	 * Main method accepts an argument for the data file location. 
-	 * If no argument is provided, the program will use the default voting file
-	 * example
+	 * Main method accepts an argument for the data file location, which may 
+	 * be a .tsv file or a data model file. If no argument is provided, the 
+	 * program will use the default voting file example. If a second argument
+	 * is provided, the data model is also saved as a data model file at that
+	 * path, for faster loading next time. The split criterion may be chosen
+	 * with an option such as --criterion=gini, which may appear anywhere; 
+	 * the criteria are entropy (the default), gini, gainratio and chisquare.
+	 * Likewise the pruning mode may be chosen with --pruning=reduced_error 
+	 * (the default), --pruning=pessimistic or --pruning=cost_complexity.
 	 * @param args
 	 */
 	public static void main(String[] args) {
+		// Pull the options out of the arguments
+		SplitCriterion criterion = null;
+		DecisionTree.PruningMode pruningMode = null;
+		List<String> fileArgs = new ArrayList<String>();
+		for(String arg : args) {
+			if(arg.startsWith(CRITERION_OPTION)) {
+				criterion = SplitCriterion.forName(
+						arg.substring(CRITERION_OPTION.length()));
+			} else if(arg.startsWith(PRUNING_OPTION)) {
+				pruningMode = DecisionTree.PruningMode.valueOf(arg.substring(
+						PRUNING_OPTION.length()).toUpperCase());
+			} else {
+				fileArgs.add(arg);
+			}
+		}
+		args = fileArgs.toArray(new String[fileArgs.size()]);
+		
 		// Build the data model from the specified file or from the default path
 		DataModel dataModel = (args.length > 0) ? 
-				parseFile(args[0]) : parseFile(VOTING_DATA_FILE);
+				loadFile(args[0]) : loadFile(VOTING_DATA_FILE);
+		if(args.length > 1)
+			saveFile(dataModel, args[1]);
 		
 		DecisionTree dTree = new DecisionTree(dataModel);
+		if(criterion != null)
+			dTree.setSplitCriterion(criterion);
+		if(pruningMode != null)
+			dTree.setPruningMode(pruningMode);
 		
 		// Train and tune on the entire data set, and print the tree
 		Log.i(TAG, "Training and tuning on entire data set");
@@ -36,13 +70,56 @@ public class VotingTester {
 		Log.i(TAG, "Tree induced from training and pruning on entire data set:" 
 				+ "\n" + dTree);
 		
-		// Do leave-one-out cross validation to determine accuracy
+		// Do leave-one-out cross validation to determine accuracy, with a 
+		// fold per processor at a time
 		Log.i(TAG, "Executing leave-one-out cross validation");
-		double louAccuracy = dTree.doLOUCrossValidation();
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors());
+		double louAccuracy;
+		try {
+			dTree.setValidationExecutor(executor);
+			louAccuracy = dTree.doLOUCrossValidation();
+		} finally {
+			executor.shutdownNow();
+		}
 		DecimalFormat doubleFormat = new DecimalFormat("#.000");
 		Log.i(TAG, "Tree accuracy " + doubleFormat.format(louAccuracy) + "%");
 	}
 	
+	/**
+	 * Loads the specified file into a data model. Data model files are 
+	 * mapped, and anything else is parsed as a voting file.
+	 * @param filePath Path to file
+	 * @return A data model representing the file's data
+	 */
+	public static DataModel loadFile(String filePath) {
+		if(!filePath.endsWith(DataModelFile.EXTENSION))
+			return parseFile(filePath);
+		
+		Log.i(TAG, "Loading data model file at " + filePath);
+		try {
+			return DataModelFile.load(filePath);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not load data model file", 
+					e);
+		}
+	}
+	
+	/**
+	 * Saves the data model as a data model file. Failures are logged, since
+	 * the data model is still usable.
+	 * @param dataModel The data model to save
+	 * @param filePath Path to file
+	 */
+	public static void saveFile(DataModel dataModel, String filePath) {
+		Log.i(TAG, "Saving data model file at " + filePath);
+		try {
+			DataModelFile.write(dataModel, filePath);
+		} catch (IOException e) {
+			Log.e(TAG, e.getMessage());
+		}
+	}
+	
 	/**
 	 * Parses the specified voting file into a data model.
 	 * Error checking is minimal, this parser mostly assumes that the file
@@ -52,28 +129,7 @@ public class VotingTester {
 	 */
 	public static DataModel parseFile(String filePath) {
 		Log.i(TAG, "Parsing file at " + filePath);
-		
-		File file = new File(filePath);
-		DataModel.Builder dataBuilder = new DataModel.Builder();
-		try {
-			Scanner scanner = new Scanner(file);
-			while(scanner.hasNextLine()) {
-				// Split on tabs
-				String[] tokens = scanner.nextLine().split(TAB_DELIMITER);
-				// Ensure we have a complete datum
-				if(tokens.length != 3) {
-					scanner.close();
-					throw new IllegalArgumentException("Illegal line in "
-							+ "data file. Each data entry must have a unique "
-							+ "identifier, a label, and a string of feaures");
-				}
-				dataBuilder.addDatum(tokens[0], tokens[1].charAt(0), tokens[2]);
-			}
-			scanner.close();
-		} catch (FileNotFoundException e) {
-			Log.e(TAG, e.getMessage());
-		}
-
-		return dataBuilder.buildDataModel();
+		return TsvParser.parseFile(filePath, 
+				Runtime.getRuntime().availableProcessors());
 	}
-}
+}
\ No newline at end of file